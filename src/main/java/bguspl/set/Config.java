@@ -30,6 +30,16 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The rule that decides which cards form a legal set (CLASSIC, SUM or ULTRA)
+     */
+    public final String setRule;
+
+    /**
+     * The number of cards in a legal set (i.e. the number of tokens a player places before claiming a set)
+     */
+    public final int setSize;
+
     /**
      * The number of human players in the game.
      */
@@ -45,6 +55,12 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * The names of the strategies used by the computer players (e.g. RANDOM, SMART)
+     * Note: if there are more computer players than strategies, the strategies are assigned cyclically.
+     */
+    private final String[] computerStrategies;
+
     /**
      * Whether to print out hints to the console or not
      */
@@ -75,12 +91,63 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The number of key presses of a player that can wait to be handled (further presses are dropped)
+     */
+    public final int inputQueueCapacity;
+
+    /**
+     * True iff the time the sets stay on the table is measured (and reported when the game ends)
+     */
+    public final boolean trackSets;
+
+    /**
+     * True iff the timeouts, freezes and number of dealt cards adapt to the players between rounds
+     */
+    public final boolean adaptiveDifficulty;
+
+    /**
+     * True iff the simulated games run on a virtual clock, which completes their timeouts, freezes and delays at once
+     * (used by the Simulator only, the game window always runs on the wall clock)
+     */
+    public final boolean virtualClock;
+
+    /**
+     * The file the game state is saved to, and resumed from on the next start (empty to disable snapshots)
+     */
+    public final String snapshotFile;
+
+    /**
+     * The number of milliseconds between two snapshots of the game state
+     */
+    public final long snapshotIntervalMillis;
+
+    /**
+     * The number of milliseconds the game gets to stop when it ends (half for its threads, the rest for its files)
+     */
+    public final long shutdownTimeoutMillis;
+
+    /**
+     * The path (without extension) of the files keeping the player statistics across games (empty to disable)
+     */
+    public final String statsFile;
+
+    /**
+     * The port of the admin and metrics HTTP endpoint on the loopback interface (-1 to disable, 0 for any free port)
+     */
+    public final int adminPort;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
      */
     public final String[] playerNames;
 
+    /**
+     * The maximal length of a player name (longer names are truncated, so they fit the records of the statistics).
+     */
+    public static final int MAX_NAME_LENGTH = 100;
+
     /**
      * The number of rows in the grid of cards on the table (and on the screen)
      */
@@ -131,22 +198,33 @@ public class Config {
     private final int[][] playerKeys;
 
     /**
-     * The default scan codes data (this is the same as in the default config.properties file)
+     * The default scan codes data for up to 8 players sharing one keyboard, for a 3x4 grid (the first two are the
+     * same as in the default config.properties file):
+     * QWER/ASDF/ZXCV, UIOP/JKL;/M,./, the digits row, the numpad, F1-F12, the navigation keys, the keys left around
+     * TYGHBN and F13-F24 (e.g. programmable keypads).
      */
     private static final String[] playerKeysDefaults = {
             "81,87,69,82,65,83,68,70,90,88,67,86",
-            "85,73,79,80,74,75,76,59,77,44,46,47"};
+            "85,73,79,80,74,75,76,59,77,44,46,47",
+            "49,50,51,52,53,54,55,56,57,48,45,61",
+            "103,104,105,109,100,101,102,107,97,98,99,96",
+            "112,113,114,115,116,117,118,119,120,121,122,123",
+            "155,36,33,19,127,35,34,145,37,38,40,39",
+            "84,89,91,93,71,72,222,92,66,78,192,8",
+            "61440,61441,61442,61443,61444,61445,61446,61447,61448,61449,61450,61451"};
 
     /**
      * Attempts to read the config properties from the current working directory. Otherwise, tries to load them
      * as a resource.
      *
-     * @param filename - the name of the configuration file.
+     * @param filename - the name of the configuration file (null for the defaults).
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
+        if (filename == null)
+            return properties; // no configuration file, use the defaults
 
         try (InputStream is = Files.newInputStream(Paths.get(filename))) {
             properties.load(is);
@@ -170,14 +248,34 @@ public class Config {
     public Config(Logger logger, Properties properties) {
 
         // cards data
-        featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
+        int values = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
+        if (values < 2) {
+            logger.log(Level.WARNING, "feature size " + values + " is too small, using 3.");
+            values = 3;
+        }
+        featureSize = values;
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        String rule = properties.getProperty("SetRule", "CLASSIC").trim().toUpperCase();
+        if (!rule.equals("CLASSIC") && !rule.equals("SUM") && !(rule.equals("ULTRA") && featureSize == 3)) {
+            logger.log(Level.WARNING, "set rule " + rule + " is not supported with feature size " + featureSize + ", using CLASSIC.");
+            rule = "CLASSIC";
+        }
+        setRule = rule;
+        int size = setRule.equals("ULTRA") ? 4 : Integer.parseInt(properties.getProperty("SetSize", Integer.toString(featureSize)));
+        // a classic set of more cards than feature values has the same value in every feature, i.e. there is none
+        if (size < 2 || setRule.equals("CLASSIC") && size > featureSize) {
+            logger.log(Level.WARNING, "set size " + size + " is not supported by the " + setRule + " rule with feature size " + featureSize + ", using " + featureSize + ".");
+            size = featureSize;
+        }
+        setSize = size;
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        computerStrategies = properties.getProperty("ComputerStrategies", "RANDOM").split(",");
+        Arrays.setAll(computerStrategies, i -> computerStrategies[i].trim().toUpperCase());
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -185,11 +283,29 @@ public class Config {
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        String capacity = properties.getProperty("InputQueueCapacity", "").trim();
+        inputQueueCapacity = capacity.isEmpty() ? setSize : Math.max(1, Integer.parseInt(capacity));
+        trackSets = Boolean.parseBoolean(properties.getProperty("TrackSets", "True"));
+        adaptiveDifficulty = Boolean.parseBoolean(properties.getProperty("AdaptiveDifficulty", "False"));
+        virtualClock = Boolean.parseBoolean(properties.getProperty("VirtualClock", "False"));
+        snapshotFile = properties.getProperty("SnapshotFile", "").trim();
+        snapshotIntervalMillis = (long) (Double.parseDouble(properties.getProperty("SnapshotIntervalSeconds", "10")) * 1000.0);
+        shutdownTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("ShutdownTimeoutSeconds", "1")) * 1000.0);
+        statsFile = properties.getProperty("StatsFile", "").trim();
+        String port = properties.getProperty("AdminPort", "").trim();
+        adminPort = port.isEmpty() ? -1 : Integer.parseInt(port);
 
         // ui data
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
         playerNames = new String[players];
         Arrays.setAll(playerNames, i -> i < names.length ? names[i].trim() : "Player " + (i + 1));
+        for (int i = 0; i < players; ++i) {
+            if (playerNames[i].length() > MAX_NAME_LENGTH) {
+                logger.log(Level.WARNING, "player " + (i + 1) + " name is longer than " + MAX_NAME_LENGTH + " characters, truncating it.");
+                int length = Character.isHighSurrogate(playerNames[i].charAt(MAX_NAME_LENGTH - 1)) ? MAX_NAME_LENGTH - 1 : MAX_NAME_LENGTH;
+                playerNames[i] = playerNames[i].substring(0, length);
+            }
+        }
 
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
@@ -200,11 +316,13 @@ public class Config {
         PlayerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
 
-        // keyboard input data
-        playerKeys = new int[players][rows * columns];
-        for (int i = 0; i < players; i++) {
+        // keyboard input data (of the human players only, the computer players share an empty array)
+        playerKeys = new int[players][];
+        Arrays.fill(playerKeys, new int[0]);
+        for (int i = 0; i < humanPlayers; i++) {
+            playerKeys[i] = new int[rows * columns];
             String defaultCodes = "";
-            if (i < 2) defaultCodes = playerKeysDefaults[i];
+            if (i < playerKeysDefaults.length) defaultCodes = playerKeysDefaults[i];
             String playerKeysString = properties.getProperty("PlayerKeys" + (i + 1), defaultCodes);
             if (playerKeysString.length() > 0) {
                 String[] codes = playerKeysString.split(",");
@@ -219,4 +337,14 @@ public class Config {
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
+
+    /**
+     * Returns the name of the strategy used by a computer player.
+     *
+     * @param player - the player id (computer players come after the human players).
+     * @return - the strategy name, as written in the configuration file.
+     */
+    public String computerStrategy(int player) {
+        return computerStrategies[Math.max(player - humanPlayers, 0) % computerStrategies.length];
+    }
 }
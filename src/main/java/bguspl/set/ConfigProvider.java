@@ -0,0 +1,145 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the configuration file and publishes a new immutable Config to the environment whenever it changes.
+ *
+ * Only the timing keys are applied to a running game: every other key (e.g. the deck, the grid, the players or the
+ * keys) keeps the value the game started with and is applied when the next game starts. The turn timeout is also
+ * kept if the new value would switch between the countdown, elapsed and no-timer modes.
+ * Readers see either the old or the new Config, since Env.config is a single volatile reference; a method that
+ * needs several consistent values should read env.config once.
+ */
+public class ConfigProvider implements AutoCloseable {
+
+    /**
+     * The keys applied to a running game.
+     */
+    private static final String[] TUNABLE_KEYS = {
+            "TurnTimeoutSeconds", "TurnTimeoutWarningSeconds", "PointFreezeSeconds", "PenaltyFreezeSeconds",
+            "TableDelaySeconds", "SnapshotIntervalSeconds", "Hints"};
+
+    /**
+     * The time to wait for an editor to finish writing the file before it is read.
+     */
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Env env;
+    private final Logger logger;
+    private final Path file;
+
+    /**
+     * The properties the current game started with.
+     */
+    private final Properties gameProperties;
+
+    private final WatchService watchService;
+    private final Thread watcherThread;
+
+    /**
+     * Starts watching a configuration file.
+     *
+     * @param env            - the environment to publish the new configurations to.
+     * @param file           - the configuration file.
+     * @param gameProperties - the properties env.config was created from.
+     * @throws IOException - if the directory of the file cannot be watched.
+     */
+    public ConfigProvider(Env env, Path file, Properties gameProperties) throws IOException {
+        this.env = env;
+        this.logger = env.logger;
+        this.file = file.toAbsolutePath();
+        this.gameProperties = gameProperties;
+
+        watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcherThread = new Thread(this::watch, "config-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * The main loop of the watcher thread: reloads the file after every batch of changes to it.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = isChanged(key);
+                // editors often write a file in several steps, wait for them to finish
+                WatchKey next;
+                while ((next = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    changed |= isChanged(next);
+                if (changed)
+                    reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {}
+    }
+
+    private boolean isChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents())
+            changed |= file.getFileName().equals(event.context());
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Reads the file and publishes a configuration with its tunable keys.
+     */
+    void reload() {
+        if (!Files.exists(file))
+            return; // being replaced, the next event will tell when it is back
+        Properties properties = Config.loadProperties(file.toString(), logger);
+        try {
+            Config current = env.config;
+            Config reloaded = new Config(logger, merge(properties, false));
+            if (Long.signum(reloaded.turnTimeoutMillis) != Long.signum(current.turnTimeoutMillis)) {
+                logger.log(Level.WARNING, "the new TurnTimeoutSeconds changes the game mode, it will be applied in the next game.");
+                reloaded = new Config(logger, merge(properties, true));
+            }
+            env.config = reloaded;
+            logger.log(Level.INFO, "configuration reloaded from " + file);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "cannot apply the configuration in " + file + ", keeping the current one: " + e);
+        }
+    }
+
+    /**
+     * @return - the properties of the current game, with the tunable keys of the given properties.
+     */
+    private Properties merge(Properties properties, boolean keepTimeout) {
+        Properties merged = new Properties();
+        merged.putAll(gameProperties);
+        for (String key : TUNABLE_KEYS) {
+            if (keepTimeout && key.equals("TurnTimeoutSeconds")) continue;
+            String value = properties.getProperty(key);
+            if (value != null) merged.setProperty(key, value);
+            else merged.remove(key);
+        }
+        return merged;
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+        watcherThread.interrupt();
+    }
+}
@@ -0,0 +1,606 @@
+package bguspl.set;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Distributes game sessions over worker processes (see Worker) on the same host or on the LAN, so the games are not
+ * limited by the heap and the garbage collector of a single JVM.
+ *
+ * The workers connect to the coordinator and exchange one message per line, with the fields separated by spaces:
+ * - worker to coordinator: HELLO name capacity (once, first), HEARTBEAT running (every HEARTBEAT_MILLIS),
+ *   RESULT session gameMillis sets winners scores (a game ended, the lists separated by commas),
+ *   FAILED session message (a game could not be played), BYE (drained: the last game ended after a DRAIN);
+ * - coordinator to worker: START session properties (the properties of the game, URL-encoded Key=Value pairs
+ *   separated by &), DRAIN (take no more games, and leave when the running games end).
+ *
+ * A new session is placed on the worker with the lowest load (running games / capacity) that has a free slot and is
+ * not draining; while all the workers are full, the sessions wait in order. A worker that sends nothing for the
+ * heartbeat timeout, or disconnects, is dropped, and its games are placed again (up to MAX_ATTEMPTS times). The
+ * sessions that wait for the idle timeout while no worker is connected fail.
+ *
+ * Usage: Coordinator [workers] [games] [capacity] [Key=Value ...]
+ * Starts the given number of worker processes on this host (logging to logs/worker-N.log), plays the games on them
+ * with the given Key=Value overrides, drains the first worker halfway and prints where the games were played.
+ */
+public class Coordinator implements AutoCloseable {
+
+    /**
+     * The time between the heartbeats of a worker.
+     */
+    static final long HEARTBEAT_MILLIS = 500;
+
+    /**
+     * The number of times a session is placed before it fails (when its workers are lost).
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The result of a game played by a worker.
+     */
+    public static final class Result {
+
+        public final long session;
+
+        /**
+         * The name of the worker that played the game.
+         */
+        public final String worker;
+
+        /**
+         * The duration of the game on the game clock of the worker.
+         */
+        public final long gameMillis;
+
+        /**
+         * The number of sets collected by all the players.
+         */
+        public final int sets;
+
+        public final int[] winners;
+        public final int[] scores;
+
+        Result(long session, String worker, long gameMillis, int sets, int[] winners, int[] scores) {
+            this.session = session;
+            this.worker = worker;
+            this.gameMillis = gameMillis;
+            this.sets = sets;
+            this.winners = winners;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * A game to be played by a worker.
+     */
+    private static final class Session {
+        final long id;
+        final Properties properties;
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        int attempts;
+
+        /**
+         * The time the session was last queued (guarded by the coordinator).
+         */
+        long queued;
+
+        Session(long id, Properties properties) {
+            this.id = id;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * The connection to a worker.
+     */
+    private final class Link {
+        final String name;
+        final int capacity;
+        final Socket socket;
+        final PrintWriter out;
+
+        /**
+         * The sessions placed on the worker and not ended yet (guarded by the coordinator).
+         */
+        final Map<Long, Session> running = new LinkedHashMap<>();
+        boolean draining;
+
+        /**
+         * The number of games the worker played.
+         */
+        final AtomicInteger played = new AtomicInteger();
+
+        /**
+         * The messages to the worker, written by the writer thread outside the coordinator lock, so a worker that
+         * does not read its socket stalls only its own messages.
+         */
+        final BlockingQueue<String> outbox = new LinkedBlockingQueue<>();
+        final Thread writer;
+
+        Link(String name, int capacity, Socket socket, PrintWriter out) {
+            this.name = name;
+            this.capacity = capacity;
+            this.socket = socket;
+            this.out = out;
+            writer = new Thread(this::write, Thread.currentThread().getName() + "-writer");
+        }
+
+        void send(String message) {
+            outbox.add(message);
+        }
+
+        /**
+         * Writes the messages of the outbox until the link is disconnected.
+         */
+        private void write() {
+            try {
+                do
+                    out.println(outbox.take());
+                while (!out.checkError()); // the socket closed, the worker is disconnected by its reader
+            } catch (InterruptedException ignored) {}
+        }
+
+        double load() {
+            return (double) running.size() / capacity;
+        }
+    }
+
+    private final Logger logger;
+    private final ServerSocket server;
+    private final Thread acceptor;
+
+    /**
+     * The connected workers by name, and the sessions waiting for a free worker (guarded by this).
+     */
+    private final Map<String, Link> workers = new LinkedHashMap<>();
+    private final Queue<Session> pending = new ArrayDeque<>();
+
+    /**
+     * The time the last worker left, or the coordinator started if no worker joined yet (guarded by this).
+     */
+    private long idleSince = System.currentTimeMillis();
+    private final long idleTimeoutMillis;
+
+    /**
+     * The games played by the workers that left (by name).
+     */
+    private final Map<String, Integer> departed = new LinkedHashMap<>();
+
+    private final AtomicLong sessions = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Starts accepting workers.
+     *
+     * @param logger                 - the logger.
+     * @param address                - the address to listen on (port 0 for any free port).
+     * @param heartbeatTimeoutMillis - the time after which a silent worker is dropped.
+     * @param idleTimeoutMillis      - the time after which a waiting session fails while no worker is connected.
+     * @throws IOException - if the address cannot be bound.
+     */
+    public Coordinator(Logger logger, InetSocketAddress address, long heartbeatTimeoutMillis, long idleTimeoutMillis)
+            throws IOException {
+        this.logger = logger;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        server = new ServerSocket();
+        server.bind(address);
+        // wake up the acceptor to fail the sessions that wait for no worker
+        server.setSoTimeout((int) Math.min(heartbeatTimeoutMillis, idleTimeoutMillis));
+        acceptor = new Thread(() -> {
+            AtomicInteger connections = new AtomicInteger();
+            while (!closed) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setSoTimeout((int) heartbeatTimeoutMillis);
+                    socket.setTcpNoDelay(true);
+                    new Thread(() -> serve(socket), "link-" + connections.incrementAndGet()).start();
+                } catch (SocketTimeoutException e) {
+                    expire();
+                } catch (IOException e) {
+                    if (!closed)
+                        logger.log(Level.WARNING, "cannot accept a worker: " + e.getMessage());
+                }
+            }
+        }, "coordinator");
+        acceptor.start();
+    }
+
+    /**
+     * @return - the port the coordinator listens on.
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Places a game on the least loaded worker (or queues it until a worker is free).
+     *
+     * @param properties - the properties of the game (override the configuration of the worker).
+     * @return - the result of the game, completed when it ends (exceptionally if it failed MAX_ATTEMPTS times, waited
+     * for the idle timeout while no worker was connected, or the coordinator closed).
+     */
+    public CompletableFuture<Result> submit(Properties properties) {
+        Session session = new Session(sessions.incrementAndGet(), properties);
+        synchronized (this) {
+            if (closed)
+                session.result.completeExceptionally(new IllegalStateException("the coordinator is closed"));
+            else
+                queue(session);
+            dispatch();
+        }
+        return session.result;
+    }
+
+    /**
+     * Stops placing games on a worker; the worker leaves when its running games end.
+     *
+     * @param name - the name of the worker.
+     * @return - true iff the worker is connected.
+     */
+    public synchronized boolean drain(String name) {
+        Link link = workers.get(name);
+        if (link == null)
+            return false;
+        link.draining = true;
+        link.send("DRAIN");
+        return true;
+    }
+
+    /**
+     * @return - the names of the connected workers.
+     */
+    public synchronized List<String> workers() {
+        return new ArrayList<>(workers.keySet());
+    }
+
+    /**
+     * @return - one line per worker (connected or departed): its name, state and the number of games it played.
+     */
+    public synchronized List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Link link : workers.values())
+            lines.add(String.format("%s: %d games played, %d running%s", link.name, link.played.get(),
+                    link.running.size(), link.draining ? ", draining" : ""));
+        departed.forEach((name, played) -> lines.add(String.format("%s: %d games played, left", name, played)));
+        return lines;
+    }
+
+    /**
+     * Drains all the workers and waits for them to leave (up to the given time), then disconnects the rest and fails
+     * the sessions that did not end.
+     *
+     * @param millis - the time to wait for the workers.
+     * @throws InterruptedException - if interrupted while waiting.
+     */
+    public void shutdown(long millis) throws InterruptedException {
+        for (String name : workers())
+            drain(name);
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (this) {
+            while (!workers.isEmpty() && System.currentTimeMillis() < deadline)
+                wait(Math.max(deadline - System.currentTimeMillis(), 1));
+        }
+        close();
+    }
+
+    @Override
+    public void close() {
+        List<Link> links;
+        synchronized (this) {
+            closed = true;
+            links = new ArrayList<>(workers.values());
+            for (Session session : pending)
+                session.result.completeExceptionally(new IllegalStateException("the coordinator is closed"));
+            pending.clear();
+        }
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (Link link : links)
+            disconnect(link);
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the messages of a worker until it leaves.
+     */
+    private void serve(Socket socket) {
+        Link link = null;
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            String[] hello = split(in.readLine());
+            if (hello.length != 3 || !hello[0].equals("HELLO"))
+                throw new IOException("expected HELLO");
+            link = register(new Link(hello[1], Math.max(1, Integer.parseInt(hello[2])), socket, out));
+            if (link == null) {
+                socket.close();
+                return;
+            }
+
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] message = split(line);
+                if (message[0].equals("HEARTBEAT"))
+                    continue; // reading it restarted the timeout
+                else if (message[0].equals("RESULT") && message.length == 6)
+                    ended(link, Long.parseLong(message[1]), new Result(Long.parseLong(message[1]), link.name,
+                            Long.parseLong(message[2]), Integer.parseInt(message[3]), ints(message[4]), ints(message[5])), null);
+                else if (message[0].equals("FAILED") && message.length >= 2)
+                    ended(link, Long.parseLong(message[1]), null, line);
+                else if (message[0].equals("BYE"))
+                    break;
+                else
+                    logger.log(Level.WARNING, "unknown message from worker " + link.name + ": " + line);
+            }
+        } catch (SocketTimeoutException e) {
+            logger.log(Level.WARNING, "worker " + (link != null ? link.name : socket.getRemoteSocketAddress()) + " missed its heartbeats");
+        } catch (IOException | RuntimeException e) {
+            if (!closed)
+                logger.log(Level.WARNING, "worker " + (link != null ? link.name : socket.getRemoteSocketAddress()) + " failed: " + e);
+        }
+        if (link != null)
+            disconnect(link);
+        else
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+    }
+
+    /**
+     * Adds a worker that said hello, and places the waiting games on it.
+     *
+     * @return - the link, or null if a worker of the same name is connected.
+     */
+    private synchronized Link register(Link link) {
+        if (closed || workers.containsKey(link.name)) {
+            logger.log(Level.WARNING, "refusing worker " + link.name + (closed ? "" : ": the name is taken"));
+            return null;
+        }
+        workers.put(link.name, link);
+        link.writer.start();
+        logger.log(Level.INFO, "worker " + link.name + " joined with capacity " + link.capacity);
+        dispatch();
+        return link;
+    }
+
+    /**
+     * Handles the end of a game on a worker.
+     *
+     * @param result - the result, or null if the game failed.
+     * @param error  - the failure message (if the game failed).
+     */
+    private synchronized void ended(Link link, long id, Result result, String error) {
+        Session session = link.running.remove(id);
+        if (session == null)
+            return;
+        if (result != null) {
+            link.played.incrementAndGet();
+            session.result.complete(result);
+        } else {
+            session.result.completeExceptionally(new IllegalStateException(error));
+        }
+        dispatch();
+    }
+
+    /**
+     * Removes a worker (that left or failed), and places its running games again.
+     */
+    private void disconnect(Link link) {
+        try {
+            link.socket.close();
+        } catch (IOException ignored) {
+        }
+        link.writer.interrupt();
+        synchronized (this) {
+            if (workers.get(link.name) != link)
+                return;
+            workers.remove(link.name);
+            departed.put(link.name, link.played.get());
+            logger.log(Level.INFO, "worker " + link.name + " left after " + link.played.get() + " games, with "
+                    + link.running.size() + " games running");
+            for (Session session : link.running.values()) {
+                if (closed || session.attempts >= MAX_ATTEMPTS)
+                    session.result.completeExceptionally(new IllegalStateException(
+                            "session " + session.id + " lost with worker " + link.name));
+                else
+                    queue(session);
+            }
+            link.running.clear();
+            if (workers.isEmpty())
+                idleSince = System.currentTimeMillis();
+            dispatch();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Adds a session to the waiting sessions. Called while holding the lock.
+     */
+    private void queue(Session session) {
+        session.queued = System.currentTimeMillis();
+        pending.add(session);
+    }
+
+    /**
+     * Fails the sessions that waited for the idle timeout while no worker was connected.
+     */
+    private synchronized void expire() {
+        if (!workers.isEmpty())
+            return;
+        long now = System.currentTimeMillis();
+        for (Iterator<Session> i = pending.iterator(); i.hasNext(); ) {
+            Session session = i.next();
+            if (now - Math.max(idleSince, session.queued) >= idleTimeoutMillis) {
+                i.remove();
+                session.result.completeExceptionally(new IllegalStateException(
+                        "session " + session.id + " waited " + idleTimeoutMillis + " ms with no worker connected"));
+            }
+        }
+    }
+
+    /**
+     * Places the waiting sessions on the least loaded workers with a free slot. Called while holding the lock.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty()) {
+            Link best = null;
+            for (Link link : workers.values())
+                if (!link.draining && link.running.size() < link.capacity && (best == null || link.load() < best.load()))
+                    best = link;
+            if (best == null)
+                return;
+            Session session = pending.poll();
+            session.attempts++;
+            best.running.put(session.id, session);
+            best.send("START " + session.id + " " + encode(session.properties));
+        }
+    }
+
+    static String encode(Properties properties) {
+        StringBuilder text = new StringBuilder();
+        try {
+            for (String key : properties.stringPropertyNames())
+                text.append(text.length() > 0 ? "&" : "").append(URLEncoder.encode(key, "UTF-8"))
+                        .append('=').append(URLEncoder.encode(properties.getProperty(key), "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return text.length() > 0 ? text.toString() : "-";
+    }
+
+    static Properties decode(String text) {
+        Properties properties = new Properties();
+        if (text.equals("-"))
+            return properties;
+        try {
+            for (String pair : text.split("&")) {
+                int separator = pair.indexOf('=');
+                properties.setProperty(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties;
+    }
+
+    static String ints(int[] values) {
+        if (values.length == 0)
+            return "-";
+        StringBuilder text = new StringBuilder();
+        for (int value : values)
+            text.append(text.length() > 0 ? "," : "").append(value);
+        return text.toString();
+    }
+
+    private static int[] ints(String text) {
+        return text.equals("-") ? new int[0] : Arrays.stream(text.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static String[] split(String line) {
+        if (line == null)
+            throw new IllegalStateException("the connection closed");
+        return line.trim().split(" ");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int position = 0;
+        int[] values = {2, 40, 2};
+        for (int i = 0; i < values.length && position < args.length && !args[position].contains("="); i++)
+            values[i] = Integer.parseInt(args[position++]);
+        int workerCount = values[0], games = values[1], capacity = values[2];
+        Properties overrides = new Properties();
+        for (String override : Arrays.copyOfRange(args, position, args.length)) {
+            int separator = override.indexOf('=');
+            if (separator > 0)
+                overrides.setProperty(override.substring(0, separator).trim(), override.substring(separator + 1).trim());
+        }
+
+        Logger logger = Logger.getLogger("SetCoordinator");
+        try (Coordinator coordinator = new Coordinator(logger,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4 * HEARTBEAT_MILLIS, 10_000)) {
+            // start the workers on this host
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            File logs = new File("logs");
+            //noinspection ResultOfMethodCallIgnored
+            logs.mkdirs();
+            List<Process> processes = new ArrayList<>();
+            for (int i = 1; i <= workerCount; i++)
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Worker.class.getName(),
+                        "127.0.0.1:" + coordinator.port(), "worker-" + i, Integer.toString(capacity))
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(logs, "worker-" + i + ".log")))
+                        .start());
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Result>> results = new ArrayList<>();
+            for (int game = 0; game < games; game++)
+                results.add(coordinator.submit(overrides));
+            AtomicInteger ended = new AtomicInteger();
+            for (CompletableFuture<Result> result : results)
+                result.whenComplete((r, e) -> ended.incrementAndGet());
+
+            // drain the first worker halfway, its games continue on the others
+            while (ended.get() < games / 2 && workerCount > 1)
+                Thread.sleep(10);
+            if (workerCount > 1)
+                coordinator.drain("worker-1");
+
+            long sets = 0;
+            int failed = 0;
+            for (CompletableFuture<Result> result : results) {
+                try {
+                    sets += result.join().sets;
+                } catch (RuntimeException e) {
+                    failed++;
+                }
+            }
+            long wallNanos = System.nanoTime() - start;
+            System.out.printf("Played %d games (%d failed) on %d workers in %.2f seconds (%.2f games per second, %.1f sets per game).%n",
+                    games - failed, failed, workerCount, wallNanos / 1e9, (games - failed) / (wallNanos / 1e9),
+                    (double) sets / Math.max(games - failed, 1));
+            coordinator.report().forEach(line -> System.out.println("  " + line));
+
+            coordinator.shutdown(10_000);
+            for (Process process : processes)
+                if (!process.waitFor(5, TimeUnit.SECONDS))
+                    process.destroyForcibly();
+        }
+    }
+}
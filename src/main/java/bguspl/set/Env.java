@@ -5,14 +5,26 @@ import java.util.logging.Logger;
 public class Env {
 
     public final Logger logger;
-    public final Config config;
+    /**
+     * The current configuration, replaced as a whole when the configuration file changes (see ConfigProvider).
+     */
+    public volatile Config config;
     public final UserInterface ui;
     public final Util util;
+    /**
+     * The time of the game (the wall clock, or a virtual clock in simulations).
+     */
+    public final GameClock clock;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, GameClock.SYSTEM);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameClock clock) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
     }
 }
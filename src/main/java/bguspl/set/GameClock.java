@@ -0,0 +1,66 @@
+package bguspl.set;
+
+/**
+ * The time of a game, and the ways its threads wait for it. The game threads use this clock instead of
+ * System.currentTimeMillis, Thread.sleep and Object.wait/notifyAll, so a game can run on wall-clock time (SYSTEM) or
+ * on a VirtualClock, which completes the timeouts, freezes and delays of a game at once while keeping their order
+ * and length exact.
+ */
+public interface GameClock {
+
+    /**
+     * The wall clock.
+     */
+    GameClock SYSTEM = new SystemClock();
+
+    /**
+     * @return - the current time in milliseconds.
+     */
+    long millis();
+
+    /**
+     * Sleeps for the given time (returns at once if it is not positive).
+     *
+     * @param millis - the time to sleep.
+     * @throws InterruptedException - if the thread is interrupted.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Waits on a monitor until it is signaled or the given time passes, like Object.wait (including the spurious
+     * wake ups). The caller must hold the monitor.
+     *
+     * @param monitor - the monitor.
+     * @param millis  - the maximal time to wait (0 to wait until signaled).
+     * @throws InterruptedException - if the thread is interrupted.
+     */
+    void await(Object monitor, long millis) throws InterruptedException;
+
+    /**
+     * Wakes the threads waiting on a monitor, like Object.notifyAll. The caller must hold the monitor.
+     *
+     * @param monitor - the monitor.
+     */
+    void signalAll(Object monitor);
+
+    /**
+     * Called by a thread that polls for something to do and found nothing: gives the other threads the chance to
+     * change the game before it polls again. Returns with the interrupt flag set if the thread is interrupted.
+     */
+    void idle();
+
+    /**
+     * Makes a thread part of the game: a virtual clock advances only while all the threads of the game wait for it.
+     * Must be called before the thread starts (or by the thread itself before it waits for the first time).
+     *
+     * @param thread - the thread.
+     */
+    void attach(Thread thread);
+
+    /**
+     * Removes a thread from the game (called by the thread when it ends).
+     *
+     * @param thread - the thread.
+     */
+    void detach(Thread thread);
+}
@@ -0,0 +1,203 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import javax.swing.JFrame;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Plays the games formed by the matchmaker (or a tournament) on a shared pool of session threads: every session
+ * runs its dealer on a pool thread, and its players on threads of their own.
+ *
+ * A game of computer players only is played without a window, like in the Simulator. A game with human players
+ * opens a window of its own, where the human players (ids 0 .. humans - 1) play with the keys of PlayerKeys1, ...
+ * Its dealer runs on a thread of its own, which the session thread waits for; closing the window ends that game
+ * only, and the window is disposed when the game ends.
+ */
+public class GameSessions implements AutoCloseable {
+
+    private final Logger logger;
+
+    /**
+     * The configuration of every game, before the players of the match are set.
+     */
+    private final Properties properties;
+
+    private final ExecutorService pool;
+
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+
+    /**
+     * @param logger     - the logger of the games.
+     * @param properties - the configuration of every game (e.g. Simulator.simulationProperties).
+     * @param threads    - the number of games played at the same time.
+     */
+    public GameSessions(Logger logger, Properties properties, int threads) {
+        this.logger = logger;
+        this.properties = properties;
+        AtomicInteger sessions = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, task -> new Thread(task, "session-" + sessions.incrementAndGet()));
+    }
+
+    /**
+     * Starts the game of a match.
+     *
+     * @param match - the players of the game.
+     * @return - the result of the game, completed when it ends.
+     */
+    public CompletableFuture<Simulator.GameResult> launch(Matchmaker.Match match) {
+        return launch(match.tickets);
+    }
+
+    /**
+     * Starts a game.
+     *
+     * @param tickets - the players of the game (the human players are moved first).
+     * @return - the result of the game, completed when it ends; its players are in the order of seating (see seating).
+     */
+    public CompletableFuture<Simulator.GameResult> launch(List<Matchmaker.Ticket> tickets) {
+        List<Matchmaker.Ticket> seated = seating(tickets);
+        return launch(() -> configure(seated));
+    }
+
+    /**
+     * Starts a game configured by properties (e.g. a game placed on this process by a coordinator).
+     *
+     * @param overrides - the properties of the game that override the configuration of every game.
+     * @return - the result of the game, completed when it ends.
+     */
+    public CompletableFuture<Simulator.GameResult> launch(Properties overrides) {
+        return launch(() -> {
+            Properties game = new Properties();
+            game.putAll(properties);
+            game.putAll(overrides);
+            return new Config(logger, game);
+        });
+    }
+
+    private CompletableFuture<Simulator.GameResult> launch(Supplier<Config> config) {
+        started.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> play(config.get()), pool)
+                .whenComplete((result, e) -> finished.incrementAndGet());
+    }
+
+    /**
+     * @param tickets - the players of a game.
+     * @return - the players in the order they are seated in the game: the human players first.
+     */
+    public static List<Matchmaker.Ticket> seating(List<Matchmaker.Ticket> tickets) {
+        List<Matchmaker.Ticket> seated = new ArrayList<>(tickets.size());
+        for (Matchmaker.Ticket ticket : tickets)
+            if (ticket.human) seated.add(ticket);
+        for (Matchmaker.Ticket ticket : tickets)
+            if (!ticket.human) seated.add(ticket);
+        return seated;
+    }
+
+    /**
+     * @return - the number of games started, and of the games that ended.
+     */
+    public int started() {
+        return started.get();
+    }
+
+    public int finished() {
+        return finished.get();
+    }
+
+    /**
+     * @return - the number of games started and not ended yet.
+     */
+    public int running() {
+        return started.get() - finished.get();
+    }
+
+    /**
+     * Waits for the started games to end, and stops the session threads.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the configuration of a game of the given players (seated by seating).
+     */
+    private Config configure(List<Matchmaker.Ticket> seated) {
+        Properties game = new Properties();
+        game.putAll(properties);
+        int humans = 0;
+        StringBuilder names = new StringBuilder(), strategies = new StringBuilder();
+        for (Matchmaker.Ticket ticket : seated) {
+            names.append(names.length() > 0 ? "," : "").append(ticket.name.replace(',', ' '));
+            if (ticket.human)
+                humans++;
+            else
+                strategies.append(strategies.length() > 0 ? "," : "").append(ticket.strategy);
+        }
+        game.setProperty("HumanPlayers", Integer.toString(humans));
+        game.setProperty("ComputerPlayers", Integer.toString(seated.size() - humans));
+        game.setProperty("PlayerNames", names.toString());
+        if (strategies.length() > 0)
+            game.setProperty("ComputerStrategies", strategies.toString());
+        return new Config(logger, game);
+    }
+
+    private Simulator.GameResult play(Config config) {
+        if (config.humanPlayers == 0)
+            return Simulator.playGame(logger, config);
+
+        UserInterfaceImpl ui = new UserInterfaceImpl(logger, config);
+        ui.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE); // the other sessions go on
+        EventQueue.invokeLater(() -> ui.setVisible(true));
+        UtilImpl util = new UtilImpl(config);
+        Env env = new Env(logger, config, ui, util);
+        Player[] players = new Player[config.players];
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+        Thread dealerThread = new Thread(dealer, Thread.currentThread().getName() + "-dealer");
+        ui.addKeyListener(new InputManager(env, players));
+        ui.addWindowListener(new WindowManager(env, dealer, dealerThread));
+
+        long start = System.nanoTime();
+        long gameStart = env.clock.millis();
+        dealerThread.start();
+        boolean interrupted = false;
+        try {
+            while (dealerThread.isAlive()) {
+                try {
+                    dealerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    dealer.terminate(); // the game ends, and its result is still collected
+                }
+            }
+        } finally {
+            EventQueue.invokeLater(ui::dispose);
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        return new Simulator.GameResult(System.nanoTime() - start, env.clock.millis() - gameStart, dealer.claims(),
+                util.findSetsInvocations(), dealer.reshuffles(), players, dealer.winners());
+    }
+}
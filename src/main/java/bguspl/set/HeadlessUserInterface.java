@@ -0,0 +1,47 @@
+package bguspl.set;
+
+/**
+ * An implementation of the UserInterface interface that displays nothing.
+ * Used for running games without a window (e.g. simulations).
+ */
+public class HeadlessUserInterface implements UserInterface {
+
+    @Override
+    public void placeCard(int card, int slot) {}
+
+    @Override
+    public void removeCard(int slot) {}
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {}
+
+    @Override
+    public void setElapsed(long millies) {}
+
+    @Override
+    public void setScore(int player, int score) {}
+
+    @Override
+    public void setFreeze(int player, long millies) {}
+
+    @Override
+    public void placeToken(int player, int slot) {}
+
+    @Override
+    public void removeTokens() {}
+
+    @Override
+    public void removeTokens(int slot) {}
+
+    @Override
+    public void removeToken(int player, int slot) {}
+
+    @Override
+    public void removeCards(int[] slots) {}
+
+    @Override
+    public void dispose() {}
+
+    @Override
+    public void announceWinner(int[] players) {}
+}
@@ -11,33 +11,42 @@ import java.util.logging.Level;
  */
 class InputManager extends KeyAdapter {
 
-    private final static int MAX_KEY_CODE = 255;
     private final Player[] players;
-    int[] keyMap = new int[MAX_KEY_CODE + 1];
-    int[] keyToSlot = new int[MAX_KEY_CODE + 1];
+    private final KeyMap keyMap;
+
+    /**
+     * True for the keys (by key map index) that are held down, so the auto-repeated presses of a held key are ignored.
+     */
+    private final boolean[] held;
     Env env;
 
     public InputManager(Env env, Player[] players) {
         this.players = players;
         this.env = env;
-        
+
         // initialize the keys
-        for (int player = 0; player < env.config.players; ++player)
-            for (int i = 0; i < env.config.playerKeys(player).length; i++) {
-                int keyCode = env.config.playerKeys(player)[i];
-                keyMap[keyCode] = player + 1; // 1 for first player and 2 for second player
-                keyToSlot[keyCode] = i;
-            }
+        keyMap = KeyMap.of(env.config, env.logger);
+        held = new boolean[keyMap.capacity()];
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
         // dispatch the key event to the player according to the key map
+        // note: this runs on the event dispatch thread, so the press is only queued for the player thread
         int keyCode = e.getKeyCode();
-        int player = keyMap[keyCode] - 1;
-        if (player >= 0){
+        int index = keyMap.find(keyCode);
+        if (index >= 0 && !held[index]) {
+            int player = keyMap.player(index);
+            held[index] = true;
             env.logger.log(Level.SEVERE, "Key " + keyCode + " was pressed by player " + player);
-            players[player].keyPressed(keyToSlot[keyCode]);
+            if (!players[player].submitKey(keyMap.slot(index)))
+                env.logger.log(Level.FINE, "Key " + keyCode + " of player " + player + " was dropped");
         }
     }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        int index = keyMap.find(e.getKeyCode());
+        if (index >= 0) held[index] = false;
+    }
 }
@@ -0,0 +1,128 @@
+package bguspl.set;
+
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maps key codes to the (player, slot) they stand for.
+ * An open addressing hash table (linear probing) over primitive arrays, built once from the configuration, so key
+ * codes of any size (e.g. the numpad and the extended function keys) are looked up in O(1) without boxing.
+ *
+ * @inv keys.length is a power of 2 and at least twice the number of mapped keys
+ */
+class KeyMap {
+
+    /**
+     * Marks an empty entry of keys (no key event has this code).
+     */
+    private static final int EMPTY = KeyEvent.VK_UNDEFINED;
+
+    /**
+     * The key maps built so far, by the keys of the human players, shared by all the games with the same keys.
+     */
+    private static final ConcurrentMap<String, KeyMap> maps = new ConcurrentHashMap<>();
+
+    /**
+     * The key code of every entry (EMPTY if none).
+     */
+    private final int[] keys;
+
+    /**
+     * The player of every entry.
+     */
+    private final int[] players;
+
+    /**
+     * The slot of every entry.
+     */
+    private final int[] slots;
+
+    /**
+     * Returns the key map of the human players, built on the first call for their keys.
+     *
+     * @param config - the game configuration (playerKeys).
+     * @param logger - used to warn about keys used more than once.
+     * @return - the (immutable) key map.
+     */
+    static KeyMap of(Config config, Logger logger) {
+        StringBuilder key = new StringBuilder().append(config.tableSize);
+        for (int player = 0; player < config.humanPlayers; ++player)
+            key.append(Arrays.toString(config.playerKeys(player)));
+        return maps.computeIfAbsent(key.toString(), k -> new KeyMap(config, logger));
+    }
+
+    /**
+     * Builds the key map of the human players (computer players do not use the keyboard).
+     *
+     * @param config - the game configuration (playerKeys).
+     * @param logger - used to warn about keys used more than once.
+     */
+    private KeyMap(Config config, Logger logger) {
+        int capacity = Integer.highestOneBit(Math.max(1, config.humanPlayers * config.tableSize)) * 4;
+        keys = new int[capacity];
+        players = new int[capacity];
+        slots = new int[capacity];
+
+        for (int player = 0; player < config.humanPlayers; ++player)
+            for (int slot = 0; slot < config.playerKeys(player).length; ++slot) {
+                int keyCode = config.playerKeys(player)[slot];
+                if (keyCode == EMPTY) continue;
+                int index = probe(keyCode);
+                if (keys[index] == keyCode) {
+                    logger.log(Level.WARNING, "key " + keyCode + " of player " + (player + 1) + " is already used by player " + (players[index] + 1) + ".");
+                    continue;
+                }
+                keys[index] = keyCode;
+                players[index] = player;
+                slots[index] = slot;
+            }
+    }
+
+    /**
+     * Returns the index of the entry of a key code, or of the empty entry where it should be inserted.
+     */
+    private int probe(int keyCode) {
+        int mask = keys.length - 1;
+        int index = (keyCode * 0x9E3779B9 >>> 16) & mask;
+        while (keys[index] != EMPTY && keys[index] != keyCode)
+            index = (index + 1) & mask;
+        return index;
+    }
+
+    /**
+     * @param keyCode - the code of a key.
+     * @return - the index of the entry of the key, or -1 if the key is not mapped.
+     */
+    int find(int keyCode) {
+        if (keyCode == EMPTY) return -1;
+        int index = probe(keyCode);
+        return keys[index] == keyCode ? index : -1;
+    }
+
+    /**
+     * @return - the number of entries (every index returned by find is smaller).
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param index - an index returned by find.
+     * @return - the player the key belongs to.
+     */
+    int player(int index) {
+        return players[index];
+    }
+
+    /**
+     * @param index - an index returned by find.
+     * @return - the slot the key stands for.
+     */
+    int slot(int index) {
+        return slots[index];
+    }
+}
@@ -0,0 +1,140 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Measures the cost of large games (256 players on a 6x6 grid by default):
+ * 1. the token labels of the slots, kept by SlotTokens, against the previous implementation that rebuilt the label
+ *    of a slot from a players x slots matrix on every token change;
+ * 2. whole games of computer players, with a user interface that keeps the token labels like the window does.
+ *
+ * Usage: LargeTableBenchmark [players] [rows] [columns] [games]
+ */
+public class LargeTableBenchmark {
+
+    /**
+     * The number of token changes of the labels benchmark.
+     */
+    private static final int TOKEN_CHANGES = 2_000_000;
+
+    /**
+     * The labels of the previous implementation: a flag per player and slot, and a label rebuilt from all players.
+     */
+    private static final class DenseTokens {
+        private final boolean[][] tokens;
+        private final String[] playerNames;
+
+        DenseTokens(int tableSize, String[] playerNames) {
+            tokens = new boolean[playerNames.length][tableSize];
+            this.playerNames = playerNames;
+        }
+
+        String set(int player, int slot, boolean held) {
+            tokens[player][slot] = held;
+            String text = "";
+            for (int p = 0; p < playerNames.length; p++)
+                if (tokens[p][slot])
+                    text = text.concat(playerNames[p] + ", ");
+            return text.length() < 2 ? "" : text.substring(0, text.length() - 2);
+        }
+    }
+
+    /**
+     * A user interface without a window that keeps the token labels.
+     */
+    private static final class LabelsUserInterface extends HeadlessUserInterface {
+        private final SlotTokens tokens;
+        private String lastLabel;
+
+        LabelsUserInterface(Config config) {
+            tokens = new SlotTokens(config.tableSize, config.playerNames);
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            lastLabel = tokens.add(player, slot);
+        }
+
+        @Override
+        public void removeToken(int player, int slot) {
+            lastLabel = tokens.remove(player, slot);
+        }
+
+        @Override
+        public void removeTokens(int slot) {
+            tokens.clear(slot);
+        }
+
+        @Override
+        public void removeCards(int[] slots) {
+            for (int slot : slots)
+                tokens.clear(slot);
+        }
+    }
+
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int columns = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int tableSize = rows * columns;
+        String[] names = new String[players];
+        for (int i = 0; i < players; i++)
+            names[i] = "Player " + (i + 1);
+
+        // every player holds tokens on up to 3 slots, as in a game
+        int[][] held = new int[players][3];
+        for (int[] slots : held)
+            Arrays.fill(slots, -1);
+        int[][] changes = new int[TOKEN_CHANGES][];
+        Random random = new Random(42);
+        for (int i = 0; i < TOKEN_CHANGES; i++) {
+            int player = random.nextInt(players), token = random.nextInt(3);
+            int slot = held[player][token];
+            if (slot == -1) {
+                slot = random.nextInt(tableSize);
+                boolean duplicate = false;
+                for (int other : held[player])
+                    duplicate |= other == slot;
+                if (duplicate) { i--; continue; }
+                held[player][token] = slot;
+                changes[i] = new int[]{player, slot, 1};
+            } else {
+                held[player][token] = -1;
+                changes[i] = new int[]{player, slot, 0};
+            }
+        }
+
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            DenseTokens dense = new DenseTokens(tableSize, names);
+            long start = System.nanoTime();
+            int length = 0;
+            for (int[] change : changes)
+                length += dense.set(change[0], change[1], change[2] == 1).length();
+            long denseNanos = System.nanoTime() - start;
+
+            SlotTokens sparse = new SlotTokens(tableSize, names);
+            start = System.nanoTime();
+            for (int[] change : changes)
+                length += (change[2] == 1 ? sparse.add(change[0], change[1]) : sparse.remove(change[0], change[1])).length();
+            long sparseNanos = System.nanoTime() - start;
+            System.out.printf("Token labels (%d players, %d slots): %.1f ns per change, previously %.1f ns (%d chars)%n",
+                    players, tableSize, (double) sparseNanos / TOKEN_CHANGES, (double) denseNanos / TOKEN_CHANGES, length);
+        }
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = Simulator.simulationProperties(logger, new String[]{
+                "ComputerPlayers=" + players, "Rows=" + rows, "Columns=" + columns, "ComputerStrategies=RANDOM,SMART",
+                "SnapshotFile=", "TrackSets=False"});
+        for (int game = 0; game < games; game++) {
+            Config config = new Config(logger, properties);
+            Simulator.GameResult result = Simulator.playGame(logger, config, new LabelsUserInterface(config));
+            System.out.printf("Game of %d players on %d slots: %.2f seconds, %d claims, %d sets%n",
+                    players, tableSize, result.nanos / 1e9, result.claims, result.sets);
+        }
+    }
+}
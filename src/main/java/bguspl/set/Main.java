@@ -1,15 +1,22 @@
 package bguspl.set;
 
+import bguspl.set.ex.AdminServer;
 import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GameSnapshot;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Properties;
 import java.util.logging.*;
 
 /**
@@ -17,19 +24,27 @@ import java.util.logging.*;
  */
 public class Main {
 
+    /**
+     * The name of the configuration file (in the working directory, or in the resources).
+     */
+    private static final String CONFIG_FILE = "config.properties";
+
     /**
      * The game's main function. Creates all data structures and initializes the threads.
      *
      * @param args - unused.
      */
     public static void main(String[] args) {
+        long startNanos = System.nanoTime();
 
         // create the game environment objects
         Logger logger = initLogger(args.length > 0);
-        Config config = new Config(logger, "config.properties");
+        Properties properties = Config.loadProperties(CONFIG_FILE, logger);
+        Config config = new Config(logger, properties);
         UserInterfaceImpl ui = new UserInterfaceImpl(logger, config);
         EventQueue.invokeLater(() -> ui.setVisible(true));
         Env env = new Env(logger, config, ui, new UtilImpl(config));
+        ConfigProvider configProvider = watchConfig(env, properties);
 
         // create the game entities
         Player[] players = new Player[env.config.players];
@@ -37,19 +52,98 @@ public class Main {
         Dealer dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        resumeSnapshot(env, dealer);
         ui.addKeyListener(new InputManager(env, players));
         ui.addWindowListener(new WindowManager(env, dealer));
+        AdminServer admin = startAdmin(env, dealer);
 
         // start the dealer thread
         Thread dealerThread = new Thread(dealer, "dealer");
         dealerThread.start();
+        ui.ready().whenComplete((ignored, e) -> {
+            if (e != null) {
+                env.logger.log(Level.SEVERE, "cannot start the game: " + e.getCause());
+                ui.dispose();
+            } else {
+                env.logger.log(Level.INFO, String.format("startup took %.1f ms (%d ms since the JVM started)",
+                        (System.nanoTime() - startNanos) / 1e6, ManagementFactory.getRuntimeMXBean().getUptime()));
+            }
+        });
 
         try {dealerThread.join();} catch (InterruptedException ignored) {}
+        if (configProvider != null) configProvider.close();
+        if (admin != null) admin.close();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
         for(Handler h:env.logger.getHandlers())
             h.close();
     }
 
+    /**
+     * Starts reloading the configuration when the file in the working directory changes.
+     *
+     * @param env        - the game environment.
+     * @param properties - the properties the game was configured with.
+     * @return - the config provider, or null if there is no configuration file to watch.
+     */
+    private static ConfigProvider watchConfig(Env env, Properties properties) {
+        Path file = Paths.get(CONFIG_FILE);
+        if (!Files.exists(file))
+            return null;
+        try {
+            return new ConfigProvider(env, file, properties);
+        } catch (IOException e) {
+            env.logger.log(Level.WARNING, "cannot watch " + file + " for changes: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts the admin and metrics endpoint, if it is enabled.
+     *
+     * @param env    - the game environment.
+     * @param dealer - the dealer of the game.
+     * @return - the endpoint, or null if it is disabled or cannot be started.
+     */
+    private static AdminServer startAdmin(Env env, Dealer dealer) {
+        if (env.config.adminPort < 0)
+            return null;
+        try {
+            AdminServer admin = new AdminServer(env.logger, env.config.adminPort);
+            admin.register("game", dealer);
+            return admin;
+        } catch (IOException e) {
+            env.logger.log(Level.WARNING, "cannot start the admin endpoint on port " + env.config.adminPort + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Restores the game saved in the snapshot file, if snapshots are enabled and the file exists.
+     *
+     * @param env    - the game environment.
+     * @param dealer - the dealer of the game (its thread must not be started yet).
+     */
+    private static void resumeSnapshot(Env env, Dealer dealer) {
+        if (env.config.snapshotFile.isEmpty())
+            return;
+        Path file = Paths.get(env.config.snapshotFile);
+        if (!Files.exists(file))
+            return;
+
+        try {
+            GameSnapshot snapshot = GameSnapshot.read(file);
+            if (snapshot.deckSize != env.config.deckSize || snapshot.tableSize != env.config.tableSize
+                    || snapshot.players != env.config.players) {
+                env.logger.log(Level.WARNING, "snapshot " + file + " does not match the configuration, starting a new game.");
+                return;
+            }
+            dealer.restore(snapshot);
+            env.logger.log(Level.INFO, "game resumed from snapshot " + file);
+        } catch (IOException e) {
+            env.logger.log(Level.WARNING, "cannot read snapshot " + file + ", starting a new game: " + e.getMessage());
+        }
+    }
+
     private static Logger initLogger(boolean disableTimestamp) {
 
         FileHandler fh;
@@ -0,0 +1,318 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Groups the waiting players (human or computer) into games by their skill rating and the size of game they want.
+ *
+ * The players waiting for games of the same size are kept sorted by rating. A new player is matched at once with the
+ * closest ratings around it if the spread of the group is within the tolerance of all its members; otherwise it
+ * waits, and a sweep repeated every sweepMillis matches the groups whose tolerance widened meanwhile (a player
+ * accepts a wider spread the longer it waits). Matching costs O(size * log(waiting)) under the lock of one game size,
+ * so games of different sizes are matched concurrently.
+ *
+ * The formed matches are handed to a listener (e.g. GameSessions::launch) on the thread that formed them, without
+ * holding any lock, so the listener should only hand the match over.
+ */
+public class Matchmaker implements AutoCloseable {
+
+    /**
+     * A player waiting for a game.
+     */
+    public static final class Ticket {
+
+        private static final AtomicLong tickets = new AtomicLong();
+
+        /**
+         * Orders the tickets by rating (then by arrival).
+         */
+        private static final Comparator<Ticket> BY_RATING =
+                Comparator.<Ticket>comparingDouble(ticket -> ticket.rating).thenComparingLong(ticket -> ticket.id);
+
+        public final long id;
+        public final String name;
+
+        /**
+         * True iff the player plays with the keyboard (otherwise it is a computer player).
+         */
+        public final boolean human;
+
+        /**
+         * The strategy of a computer player (see Player.Strategy), ignored for human players.
+         */
+        public final String strategy;
+
+        public final double rating;
+
+        /**
+         * The number of players of the game the player wants.
+         */
+        public final int size;
+
+        /**
+         * The time the ticket was enqueued (System.nanoTime).
+         */
+        private volatile long enqueuedNanos;
+
+        public Ticket(String name, boolean human, String strategy, double rating, int size) {
+            if (size < 1)
+                throw new IllegalArgumentException("game size " + size);
+            this.id = tickets.incrementAndGet();
+            this.name = name;
+            this.human = human;
+            this.strategy = strategy;
+            this.rating = rating;
+            this.size = size;
+        }
+
+        /**
+         * @return - the time the ticket was enqueued (System.nanoTime).
+         */
+        public long enqueuedNanos() {
+            return enqueuedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.0f)", name, rating);
+        }
+    }
+
+    /**
+     * A group of players to play a game together.
+     */
+    public static final class Match {
+
+        /**
+         * The players, by ascending rating.
+         */
+        public final List<Ticket> tickets;
+
+        /**
+         * The time the match was formed (System.nanoTime).
+         */
+        public final long formedNanos;
+
+        Match(List<Ticket> tickets, long formedNanos) {
+            this.tickets = tickets;
+            this.formedNanos = formedNanos;
+        }
+
+        /**
+         * @return - the difference between the highest and the lowest rating of the players.
+         */
+        public double spread() {
+            return tickets.get(tickets.size() - 1).rating - tickets.get(0).rating;
+        }
+
+        @Override
+        public String toString() {
+            return tickets.toString();
+        }
+    }
+
+    /**
+     * The waiting tickets of every game size (each set is guarded by itself).
+     */
+    private final Map<Integer, TreeSet<Ticket>> waiting = new ConcurrentHashMap<>();
+
+    private final Consumer<Match> listener;
+
+    /**
+     * The rating spread every player accepts at once, and how much it widens per second of waiting.
+     */
+    private final double tolerance;
+    private final double widenPerSecond;
+
+    private final ScheduledExecutorService sweeper;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong matched = new AtomicLong();
+
+    /**
+     * @param tolerance      - the rating spread every player accepts at once.
+     * @param widenPerSecond - how much the accepted spread widens per second of waiting.
+     * @param sweepMillis    - the time between the sweeps of the waiting players (0 for no sweeps, see sweep).
+     * @param listener       - receives the formed matches.
+     */
+    public Matchmaker(double tolerance, double widenPerSecond, long sweepMillis, Consumer<Match> listener) {
+        this.tolerance = tolerance;
+        this.widenPerSecond = widenPerSecond;
+        this.listener = listener;
+        if (sweepMillis > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "matchmaker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Adds a player to the queue, and forms its game if there are enough players of a close rating.
+     *
+     * @param ticket - the player (enqueued at most once).
+     * @return - the match formed with the player, or null if it waits.
+     */
+    public Match enqueue(Ticket ticket) {
+        enqueued.incrementAndGet();
+        long now = System.nanoTime();
+        ticket.enqueuedNanos = now;
+        TreeSet<Ticket> queue = waiting.computeIfAbsent(ticket.size, size -> new TreeSet<>(Ticket.BY_RATING));
+        Match match;
+        synchronized (queue) {
+            queue.add(ticket);
+            match = matchAround(queue, ticket, now);
+        }
+        deliver(match);
+        return match;
+    }
+
+    /**
+     * Removes a waiting player from the queue.
+     *
+     * @param ticket - the player.
+     * @return - true iff the player was waiting (false if it was matched already).
+     */
+    public boolean cancel(Ticket ticket) {
+        TreeSet<Ticket> queue = waiting.get(ticket.size);
+        if (queue == null)
+            return false;
+        synchronized (queue) {
+            return queue.remove(ticket);
+        }
+    }
+
+    /**
+     * Forms the games of the waiting players whose tolerance widened enough: every size is scanned by rating, and
+     * every run of consecutive players within the tolerance of all of them is matched.
+     */
+    public void sweep() {
+        long now = System.nanoTime();
+        for (Map.Entry<Integer, TreeSet<Ticket>> entry : waiting.entrySet()) {
+            int size = entry.getKey();
+            TreeSet<Ticket> queue = entry.getValue();
+            List<Match> matches = new ArrayList<>();
+            synchronized (queue) {
+                List<Ticket> window = new ArrayList<>(size);
+                for (Iterator<Ticket> it = queue.iterator(); it.hasNext(); ) {
+                    window.add(it.next());
+                    if (window.size() < size)
+                        continue;
+                    if (acceptable(window, now)) {
+                        matches.add(new Match(new ArrayList<>(window), now));
+                        window.clear();
+                    } else {
+                        window.remove(0);
+                    }
+                }
+                for (Match match : matches)
+                    queue.removeAll(match.tickets);
+            }
+            for (Match match : matches)
+                deliver(match);
+        }
+    }
+
+    /**
+     * @return - the number of players waiting for a game.
+     */
+    public int waiting() {
+        int count = 0;
+        for (TreeSet<Ticket> queue : waiting.values())
+            synchronized (queue) {
+                count += queue.size();
+            }
+        return count;
+    }
+
+    /**
+     * @return - the number of players enqueued so far.
+     */
+    public long enqueued() {
+        return enqueued.get();
+    }
+
+    /**
+     * @return - the number of players matched so far.
+     */
+    public long matched() {
+        return matched.get();
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null)
+            sweeper.shutdownNow();
+    }
+
+    /**
+     * Finds the closest group around a new ticket: the window of size consecutive tickets (by rating) containing it
+     * with the smallest spread. Called while holding the lock of the queue.
+     *
+     * @return - the match, removed from the queue, or null if no group is within the tolerance of its members.
+     */
+    private Match matchAround(TreeSet<Ticket> queue, Ticket ticket, long now) {
+        int size = ticket.size;
+        if (queue.size() < size)
+            return null;
+
+        // the candidates: up to size - 1 tickets on each side, by rating
+        List<Ticket> around = new ArrayList<>(2 * size - 1);
+        Iterator<Ticket> below = queue.headSet(ticket, false).descendingIterator();
+        for (int i = 0; i < size - 1 && below.hasNext(); i++)
+            around.add(0, below.next());
+        around.add(ticket);
+        Iterator<Ticket> above = queue.tailSet(ticket, false).iterator();
+        for (int i = 0; i < size - 1 && above.hasNext(); i++)
+            around.add(above.next());
+
+        List<Ticket> best = null;
+        for (int from = 0; from + size <= around.size(); from++) {
+            List<Ticket> window = around.subList(from, from + size);
+            if (acceptable(window, now) && (best == null || spread(window) < spread(best)))
+                best = window;
+        }
+        if (best == null)
+            return null;
+        Match match = new Match(new ArrayList<>(best), now);
+        queue.removeAll(match.tickets);
+        return match;
+    }
+
+    /**
+     * @return - true iff the spread of the (sorted) tickets is within the tolerance of every one of them.
+     */
+    private boolean acceptable(List<Ticket> window, long now) {
+        double spread = spread(window);
+        for (Ticket ticket : window)
+            if (spread > tolerance + widenPerSecond * (now - ticket.enqueuedNanos) / 1e9)
+                return false;
+        return true;
+    }
+
+    private static double spread(List<Ticket> window) {
+        return window.get(window.size() - 1).rating - window.get(0).rating;
+    }
+
+    private void deliver(Match match) {
+        if (match == null)
+            return;
+        matched.addAndGet(match.tickets.size());
+        listener.accept(match);
+    }
+}
@@ -0,0 +1,131 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * A load test of the matchmaker with computer players:
+ * 1. threads enqueue players of random ratings (mean 1500, deviation 300) wanting games of MIN_SIZE to MAX_SIZE
+ *    players as fast as they can, and the latency of every enqueue (including forming its match) is measured;
+ * 2. the games of some of the formed matches are played on the game sessions.
+ *
+ * Usage: MatchmakerLoadTest [players] [threads] [games] [Key=Value ...]
+ * The Key=Value pairs override the values read from config.properties for the games.
+ */
+public class MatchmakerLoadTest {
+
+    /**
+     * The rating spread accepted at once, how much it widens per second of waiting, and the time between sweeps.
+     */
+    private static final double TOLERANCE = 100;
+    private static final double WIDEN_PER_SECOND = 200;
+    private static final long SWEEP_MILLIS = 50;
+
+    /**
+     * The sizes of the games the players want.
+     */
+    private static final int MIN_SIZE = 2, MAX_SIZE = 4;
+
+    /**
+     * The longest time to wait for the sweeps to match the players left waiting.
+     */
+    private static final long DRAIN_MILLIS = 5000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int position = 0;
+        int[] values = {200_000, Runtime.getRuntime().availableProcessors(), 100};
+        for (int i = 0; i < values.length && position < args.length && !args[position].contains("="); i++)
+            values[i] = Integer.parseInt(args[position++]);
+        int players = values[0], threads = values[1], games = values[2];
+        String[] overrides = Arrays.copyOfRange(args, position, args.length);
+
+        ConcurrentLinkedQueue<Matchmaker.Match> matches = new ConcurrentLinkedQueue<>();
+        for (int round = 0; round < 3; round++) { // the first rounds warm up the JIT
+            matches.clear();
+            try (Matchmaker matchmaker = new Matchmaker(TOLERANCE, WIDEN_PER_SECOND, SWEEP_MILLIS, matches::add)) {
+                matchRound(matchmaker, matches, players, threads, round);
+            }
+        }
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = Simulator.simulationProperties(logger, overrides);
+        List<CompletableFuture<Simulator.GameResult>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try (GameSessions sessions = new GameSessions(logger, properties, threads)) {
+            for (Matchmaker.Match match : matches) {
+                if (results.size() == games)
+                    break;
+                results.add(sessions.launch(match));
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        long sets = 0;
+        for (CompletableFuture<Simulator.GameResult> result : results)
+            sets += result.join().sets;
+        System.out.printf("Played %d matched games in %.2f seconds (%.2f games per second, %.1f sets per game).%n",
+                results.size(), wallNanos / 1e9, results.size() / (wallNanos / 1e9), (double) sets / Math.max(results.size(), 1));
+    }
+
+    private static void matchRound(Matchmaker matchmaker, ConcurrentLinkedQueue<Matchmaker.Match> matches,
+                                   int players, int threads, int round) throws InterruptedException {
+        long[][] latencies = new long[threads][];
+        Thread[] producers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            producers[t] = new Thread(() -> {
+                Random random = new Random(round * 1000L + id);
+                int count = players / threads + (id < players % threads ? 1 : 0);
+                long[] nanos = new long[count];
+                for (int i = 0; i < count; i++) {
+                    Matchmaker.Ticket ticket = new Matchmaker.Ticket("Bot " + id + "-" + i, false,
+                            random.nextBoolean() ? "SMART" : "RANDOM", 1500 + random.nextGaussian() * 300, MIN_SIZE + random.nextInt(MAX_SIZE - MIN_SIZE + 1));
+                    long before = System.nanoTime();
+                    matchmaker.enqueue(ticket);
+                    nanos[i] = System.nanoTime() - before;
+                }
+                latencies[id] = nanos;
+            }, "producer-" + t);
+            producers[t].start();
+        }
+        for (Thread producer : producers)
+            producer.join();
+        long enqueueNanos = System.nanoTime() - start;
+        int waitingAfterEnqueue = matchmaker.waiting();
+
+        // the sweeps match all the players, except fewer than size players of every size
+        int unmatchable = 0;
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++)
+            unmatchable += size - 1;
+        long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+        while (matchmaker.waiting() > unmatchable && System.currentTimeMillis() < deadline)
+            Thread.sleep(SWEEP_MILLIS);
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        double spread = 0, wait = 0;
+        int tickets = 0;
+        for (Matchmaker.Match match : matches) {
+            spread += match.spread();
+            for (Matchmaker.Ticket ticket : match.tickets)
+                wait += match.formedNanos - ticket.enqueuedNanos();
+            tickets += match.tickets.size();
+        }
+        System.out.printf("Round %d: %d players enqueued by %d threads in %.3f s (%.0f per second), %d waiting after the enqueues.%n",
+                round + 1, players, threads, enqueueNanos / 1e9, players / (enqueueNanos / 1e9), waitingAfterEnqueue);
+        System.out.printf("  enqueue latency: median %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                percentile(all, 0.5) / 1e3, percentile(all, 0.99) / 1e3, percentile(all, 0.999) / 1e3, all[all.length - 1] / 1e3);
+        System.out.printf("  %d matches of %d players (%d left waiting), mean rating spread %.1f, mean wait %.1f ms%n",
+                matches.size(), tickets, matchmaker.waiting(), spread / Math.max(matches.size(), 1), wait / Math.max(tickets, 1) / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min((int) (fraction * sorted.length), sorted.length - 1)];
+    }
+}
@@ -0,0 +1,42 @@
+package bguspl.set;
+
+import java.util.BitSet;
+
+/**
+ * A rule that decides which groups of cards form a legal set.
+ */
+public interface SetRule {
+
+    /**
+     * @return - the number of cards in a legal set.
+     */
+    int size();
+
+    /**
+     * Checks if an array of cards forms a legal set according to this rule.
+     * @param cards - the array of size() card ids (in any order).
+     * @return      - true iff the array forms a legal set.
+     */
+    boolean test(int[] cards);
+
+    /**
+     * Finds the card that completes size() - 1 cards to a legal set.
+     * @param cards - the array of size() - 1 card ids (in any order).
+     * @return      - the card id completing the set, or -1 if there is no such card or it is not unique.
+     */
+    int complete(int[] cards);
+
+    /**
+     * Checks many candidates at once.
+     * @param candidates - the card ids of the candidates, size() per candidate (candidate i starts at i * size()).
+     * @param legal      - bit i is set iff candidate i forms a legal set (the other bits of the candidates are
+     *                     cleared, the bits after them are left as they are).
+     */
+    default void testAll(int[] candidates, BitSet legal) {
+        int[] cards = new int[size()];
+        for (int i = 0; i < candidates.length / size(); ++i) {
+            System.arraycopy(candidates, i * size(), cards, 0, size());
+            legal.set(i, test(cards));
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package bguspl.set;
+
+import java.util.BitSet;
+
+/**
+ * The set rules supported by the game.
+ * Every rule precomputes the feature values of all the cards and a validation table per feature, so testing a
+ * candidate costs a few array lookups per feature instead of comparing every pair of cards.
+ */
+public final class SetRules {
+
+    private SetRules() {}
+
+    /**
+     * Creates the rule selected in the configuration.
+     *
+     * @param config - the game configuration (setRule, setSize and the cards data).
+     * @return - the set rule.
+     */
+    public static SetRule create(Config config) {
+        switch (config.setRule) {
+            case "SUM":
+                return new ModularSum(config);
+            case "ULTRA":
+                return new Ultra(config);
+            default:
+                return new Classic(config);
+        }
+    }
+
+    /**
+     * The base of all rules: holds the feature values of every card in the deck.
+     */
+    private abstract static class FeatureTableRule implements SetRule {
+
+        protected final int featureCount;
+        protected final int featureSize;
+        protected final int size;
+
+        /**
+         * The value of feature f of card c is features[c * featureCount + f].
+         */
+        protected final byte[] features;
+
+        /**
+         * The weight of each feature in a card id (i.e. featureSize ^ (featureCount - 1 - feature)).
+         */
+        protected final int[] weights;
+
+        FeatureTableRule(Config config, int size) {
+            this.featureCount = config.featureCount;
+            this.featureSize = config.featureSize;
+            this.size = size;
+
+            weights = new int[featureCount];
+            for (int f = featureCount - 1, weight = 1; f >= 0; --f, weight *= featureSize)
+                weights[f] = weight;
+
+            features = new byte[config.deckSize * featureCount];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int f = 0; f < featureCount; ++f)
+                    features[card * featureCount + f] = (byte) (card / weights[f] % featureSize);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Every feature is either the same in all the cards or different in all the cards.
+     *
+     * Batches of candidates are tested SIMD-within-a-register: every card is packed into a long with two bits per
+     * feature, so one XOR compares all the features of two cards, and a candidate is legal iff every feature lane is
+     * either equal in all the pairs of its cards or different in all of them. Used for up to 4 values and 32 features
+     * per card (the other decks test one candidate at a time).
+     */
+    private static final class Classic extends FeatureTableRule {
+
+        /**
+         * The low bit of every 2-bit lane.
+         */
+        private static final long LOW_BITS = 0x5555_5555_5555_5555L;
+
+        /**
+         * The features of card c packed into packed[c], feature f in bits 2f and 2f + 1 (null if they do not fit).
+         */
+        private final long[] packed;
+
+        /**
+         * The low bit of the lane of every feature.
+         */
+        private final long lanes;
+
+        /**
+         * valid[mask] is true iff the feature values forming the bit mask are all the same or all different.
+         */
+        private final boolean[] valid;
+
+        /**
+         * completion[mask] is the value completing size - 1 feature values forming the bit mask (-1 if none or
+         * not unique).
+         */
+        private final int[] completion;
+
+        Classic(Config config) {
+            super(config, config.setSize);
+            int values = (1 << featureSize) - 1;
+            valid = new boolean[values + 1];
+            completion = new int[values + 1];
+            for (int mask = 0; mask <= values; ++mask) {
+                int distinct = Integer.bitCount(mask);
+                valid[mask] = distinct == 1 || distinct == size;
+                completion[mask] = -1;
+                if (size > 2 && distinct == 1)
+                    completion[mask] = Integer.numberOfTrailingZeros(mask);
+                else if (size > 2 && distinct == size - 1 && distinct == featureSize - 1)
+                    completion[mask] = Integer.numberOfTrailingZeros(~mask & values);
+            }
+
+            lanes = LOW_BITS >>> (Long.SIZE - 2 * Math.min(featureCount, Long.SIZE / 2));
+            if (featureSize <= 4 && featureCount <= Long.SIZE / 2) {
+                packed = new long[config.deckSize];
+                for (int card = 0; card < packed.length; ++card)
+                    for (int f = 0; f < featureCount; ++f)
+                        packed[card] |= (long) features[card * featureCount + f] << (2 * f);
+            } else {
+                packed = null;
+            }
+        }
+
+        /**
+         * @return - the low bit of every lane in which the two packed cards are equal.
+         */
+        private static long equalLanes(long a, long b) {
+            long x = a ^ b;
+            return ~(x | x >>> 1) & LOW_BITS;
+        }
+
+        @Override
+        public void testAll(int[] candidates, BitSet legal) {
+            if (packed == null) {
+                super.testAll(candidates, legal);
+                return;
+            }
+            int count = candidates.length / size;
+            long[] words = new long[(count + Long.SIZE - 1) / Long.SIZE];
+            long[] cards = new long[size];
+            for (int i = 0, base = 0; i < count; ++i, base += size) {
+                long same, different;
+                if (size == 3) {
+                    long a = packed[candidates[base]], b = packed[candidates[base + 1]], c = packed[candidates[base + 2]];
+                    long ab = equalLanes(a, b), ac = equalLanes(a, c), bc = equalLanes(b, c);
+                    same = ab & ac;
+                    different = ~(ab | ac | bc);
+                } else if (size == 4) {
+                    long a = packed[candidates[base]], b = packed[candidates[base + 1]];
+                    long c = packed[candidates[base + 2]], d = packed[candidates[base + 3]];
+                    long ab = equalLanes(a, b), ac = equalLanes(a, c), ad = equalLanes(a, d);
+                    same = ab & ac & ad;
+                    different = ~(ab | ac | ad | equalLanes(b, c) | equalLanes(b, d) | equalLanes(c, d));
+                } else {
+                    for (int j = 0; j < size; ++j)
+                        cards[j] = packed[candidates[base + j]];
+                    same = lanes;
+                    long anyEqual = 0;
+                    for (int j = 1; j < size; ++j) {
+                        same &= equalLanes(cards[0], cards[j]);
+                        for (int m = 0; m < j; ++m)
+                            anyEqual |= equalLanes(cards[m], cards[j]);
+                    }
+                    different = ~anyEqual;
+                }
+                long missing = ~(same | different) & lanes; // the lanes that are neither
+                words[i >>> 6] |= ((missing - 1) >>> 63) << i; // 1 iff missing == 0 (missing < 2^63)
+            }
+            legal.clear(0, count);
+            legal.or(BitSet.valueOf(words));
+        }
+
+        @Override
+        public boolean test(int[] cards) {
+            for (int f = 0; f < featureCount; ++f) {
+                int mask = 0;
+                for (int card : cards)
+                    mask |= 1 << features[card * featureCount + f];
+                if (!valid[mask]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int complete(int[] cards) {
+            int card = 0;
+            for (int f = 0; f < featureCount; ++f) {
+                int mask = 0;
+                for (int c : cards)
+                    mask |= 1 << features[c * featureCount + f];
+                if (completion[mask] < 0) return -1;
+                card += completion[mask] * weights[f];
+            }
+            return card;
+        }
+    }
+
+    /**
+     * Every feature sums to 0 modulo the feature size.
+     */
+    private static final class ModularSum extends FeatureTableRule {
+
+        /**
+         * zero[sum] is true iff sum is divisible by the feature size.
+         */
+        private final boolean[] zero;
+
+        /**
+         * completion[sum] is the value that makes sum divisible by the feature size.
+         */
+        private final int[] completion;
+
+        ModularSum(Config config) {
+            super(config, config.setSize);
+            int maxSum = size * (featureSize - 1);
+            zero = new boolean[maxSum + 1];
+            completion = new int[maxSum + 1];
+            for (int sum = 0; sum <= maxSum; ++sum) {
+                zero[sum] = sum % featureSize == 0;
+                completion[sum] = (featureSize - sum % featureSize) % featureSize;
+            }
+        }
+
+        @Override
+        public boolean test(int[] cards) {
+            for (int f = 0; f < featureCount; ++f) {
+                int sum = 0;
+                for (int card : cards)
+                    sum += features[card * featureCount + f];
+                if (!zero[sum]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int complete(int[] cards) {
+            int card = 0;
+            for (int f = 0; f < featureCount; ++f) {
+                int sum = 0;
+                for (int c : cards)
+                    sum += features[c * featureCount + f];
+                card += completion[sum] * weights[f];
+            }
+            for (int c : cards)
+                if (c == card) return -1; // the completion must be a different card
+            return card;
+        }
+    }
+
+    /**
+     * Four cards that can be split into two pairs completing to the same (classic) card.
+     * Supported only for a feature size of 3.
+     */
+    private static final class Ultra extends FeatureTableRule {
+
+        /**
+         * The three ways to split four cards into two pairs.
+         */
+        private static final int[][] PAIRINGS = {{0, 1, 2, 3}, {0, 2, 1, 3}, {0, 3, 1, 2}};
+
+        /**
+         * balanced[a * 27 + b * 9 + c * 3 + d] is true iff the pair of values (a, b) completes to the same value as
+         * the pair (c, d), i.e. a + b = c + d modulo 3.
+         */
+        private final boolean[] balanced = new boolean[81];
+
+        Ultra(Config config) {
+            super(config, 4);
+            for (int i = 0; i < balanced.length; ++i)
+                balanced[i] = (i / 27 + i / 9 % 3 - i / 3 % 3 - i % 3 + 6) % 3 == 0;
+        }
+
+        @Override
+        public boolean test(int[] cards) {
+            for (int[] pairing : PAIRINGS) {
+                int a = cards[pairing[0]] * featureCount, b = cards[pairing[1]] * featureCount;
+                int c = cards[pairing[2]] * featureCount, d = cards[pairing[3]] * featureCount;
+                int f = 0;
+                while (f < featureCount && balanced[features[a + f] * 27 + features[b + f] * 9 + features[c + f] * 3 + features[d + f]])
+                    ++f;
+                if (f == featureCount) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int complete(int[] cards) {
+            return -1; // three cards are completed by a different card for each of the pairings
+        }
+    }
+}
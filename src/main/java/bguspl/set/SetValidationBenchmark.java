@@ -0,0 +1,88 @@
+package bguspl.set;
+
+import java.util.BitSet;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares testing candidates one call at a time (testSet) with testing them in batches (testSets), for the decks
+ * of 3 values x 4 features, 3 x 6 and 4 x 5 with the classic rule, and checks that both agree.
+ *
+ * Usage: SetValidationBenchmark [candidates]
+ */
+public class SetValidationBenchmark {
+
+    /**
+     * The decks to compare: {feature size, feature count}.
+     */
+    private static final int[][] DECKS = {{3, 4}, {3, 6}, {4, 5}};
+
+    /**
+     * The number of timed rounds per deck (the first rounds warm up the JIT).
+     */
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+
+        for (int[] deck : DECKS) {
+            Properties properties = new Properties();
+            properties.setProperty("FeatureSize", Integer.toString(deck[0]));
+            properties.setProperty("FeatureCount", Integer.toString(deck[1]));
+            Config config = new Config(logger, properties);
+            UtilImpl util = new UtilImpl(config);
+            int k = config.setSize;
+
+            // random candidates of distinct cards, and some legal sets among them
+            Random random = new Random(7);
+            int[] candidates = new int[count * k];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < k; j++) {
+                    int card;
+                    boolean duplicate;
+                    do {
+                        card = random.nextInt(config.deckSize);
+                        duplicate = false;
+                        for (int m = 0; m < j; m++)
+                            duplicate |= candidates[i * k + m] == card;
+                    } while (duplicate);
+                    candidates[i * k + j] = card;
+                }
+                if (i % 4 == 0 && k > 2) { // complete every fourth candidate to a set when possible
+                    int[] first = new int[k - 1];
+                    System.arraycopy(candidates, i * k, first, 0, k - 1);
+                    int last = util.setRule().complete(first);
+                    if (last >= 0)
+                        candidates[i * k + k - 1] = last;
+                }
+            }
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                int[] cards = new int[k];
+                int singleLegal = 0;
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(candidates, i * k, cards, 0, k);
+                    if (util.testSet(cards))
+                        singleLegal++;
+                }
+                long singleNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                BitSet legal = new BitSet(count);
+                util.testSets(candidates, k, legal);
+                long batchNanos = System.nanoTime() - start;
+
+                if (legal.cardinality() != singleLegal)
+                    throw new AssertionError("the batch found " + legal.cardinality() + " sets instead of " + singleLegal);
+                if (round == ROUNDS - 1)
+                    System.out.printf("%d x %d deck, %d cards per set: testSet %.2f ns, testSets %.2f ns per candidate (%.1fx), %d legal of %d%n",
+                            deck[0], deck[1], k, (double) singleNanos / count, (double) batchNanos / count,
+                            (double) singleNanos / batchNanos, singleLegal, count);
+            }
+        }
+    }
+}
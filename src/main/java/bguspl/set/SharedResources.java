@@ -0,0 +1,79 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The immutable resources of a deck and rule, built once and shared by all the games with the same FeatureCount,
+ * FeatureSize, SetRule and SetSize: the set rule with its feature and validation tables, the features of every card
+ * and the boxed card ids. A game therefore holds only its own state, so many games fit in one process.
+ *
+ * The resources of every combination in use are kept for the lifetime of the process (there are only a few).
+ */
+public final class SharedResources {
+
+    private static final ConcurrentMap<List<Object>, SharedResources> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The rule that decides which cards form a legal set.
+     */
+    public final SetRule rule;
+
+    /**
+     * The features of every card (see Util.cardToFeatures).
+     */
+    private final int[][] features;
+
+    /**
+     * The boxed id of every card, so the decks of all the games share the same Integer objects.
+     */
+    private final Integer[] cards;
+
+    private SharedResources(Config config) {
+        rule = SetRules.create(config);
+        features = new int[config.deckSize][config.featureCount];
+        cards = new Integer[config.deckSize];
+        for (int card = 0; card < config.deckSize; ++card) {
+            for (int i = config.featureCount - 1, rest = card; i >= 0; --i, rest /= config.featureSize)
+                features[card][i] = rest % config.featureSize;
+            cards[card] = card;
+        }
+    }
+
+    /**
+     * @param config - the game configuration.
+     * @return - the resources of the deck and rule of the configuration (built on the first call).
+     */
+    public static SharedResources of(Config config) {
+        List<Object> key = Arrays.asList(config.featureCount, config.featureSize, config.setRule, config.setSize);
+        return cache.computeIfAbsent(key, k -> new SharedResources(config));
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - a new copy of the features of the card.
+     */
+    public int[] features(int card) {
+        return features[card].clone();
+    }
+
+    /**
+     * Copies the features of a card.
+     *
+     * @param card   - a card id.
+     * @param target - the array to copy the features to.
+     */
+    public void features(int card, int[] target) {
+        System.arraycopy(features[card], 0, target, 0, target.length);
+    }
+
+    /**
+     * @return - a new, modifiable list of all the card ids in order.
+     */
+    public List<Integer> deck() {
+        return new ArrayList<>(Arrays.asList(cards));
+    }
+}
@@ -0,0 +1,320 @@
+package bguspl.set;
+
+import bguspl.set.ex.AdminServer;
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Plays many games of computer players as fast as possible (no delays, no window) and prints aggregated statistics.
+ * Used for capacity planning and for comparing the strategies of the computer players.
+ * With VirtualClock=True the games keep the configured delays, freezes and timeouts and run on a virtual clock, so
+ * realistically timed games take no longer than games without delays.
+ *
+ * Usage: Simulator [games] [threads] [Key=Value ...]
+ * The Key=Value pairs override the values read from config.properties.
+ */
+public class Simulator {
+
+    /**
+     * The number of games to play if not specified otherwise.
+     */
+    private static final int DEFAULT_GAMES = 100;
+
+    /**
+     * The admin endpoint the running games are registered in (null if disabled).
+     */
+    private static volatile AdminServer admin;
+
+    /**
+     * The number of games started, which names them in the admin endpoint.
+     */
+    private static final AtomicInteger startedGames = new AtomicInteger();
+
+    /**
+     * The result of a single simulated game.
+     */
+    public static class GameResult {
+
+        /**
+         * The duration of the game in nanoseconds.
+         */
+        public final long nanos;
+
+        /**
+         * The duration of the game on the game clock in milliseconds (the simulated time on a virtual clock).
+         */
+        public final long gameMillis;
+
+        /**
+         * The number of set claims checked by the dealer.
+         */
+        public final int claims;
+
+        /**
+         * The number of sets collected by all players.
+         */
+        public final int sets;
+
+        /**
+         * The number of times the set finder was invoked.
+         */
+        public final long findSetsInvocations;
+
+        /**
+         * The number of times the dealer returned the cards to the deck before the game ended.
+         */
+        public final int reshuffles;
+
+        /**
+         * The strategy of each player.
+         */
+        public final Player.Strategy[] strategies;
+
+        /**
+         * The ids of the winners.
+         */
+        public final int[] winners;
+
+        /**
+         * The final score of each player.
+         */
+        public final int[] scores;
+
+        GameResult(long nanos, long gameMillis, int claims, long findSetsInvocations, int reshuffles, Player[] players,
+                   int[] winners) {
+            this.nanos = nanos;
+            this.gameMillis = gameMillis;
+            this.claims = claims;
+            this.findSetsInvocations = findSetsInvocations;
+            this.reshuffles = reshuffles;
+            this.winners = winners;
+            strategies = new Player.Strategy[players.length];
+            scores = new int[players.length];
+            int sets = 0;
+            for (int i = 0; i < players.length; i++) {
+                strategies[i] = players[i].strategy;
+                scores[i] = players[i].score();
+                sets += scores[i];
+            }
+            this.sets = sets;
+        }
+    }
+
+    /**
+     * Aggregated statistics of many games.
+     */
+    static class Stats {
+
+        private int games;
+        private long claims;
+        private long sets;
+        private long findSetsInvocations;
+        private long reshuffles;
+        private long nanos;
+        private long gameMillis;
+
+        /**
+         * The number of wins per strategy (a tie splits the win between the winners).
+         */
+        private final Map<Player.Strategy, Double> wins = new TreeMap<>();
+
+        /**
+         * The number of players that used each strategy (in all games).
+         */
+        private final Map<Player.Strategy, Integer> players = new TreeMap<>();
+
+        private void add(GameResult result) {
+            games++;
+            claims += result.claims;
+            sets += result.sets;
+            findSetsInvocations += result.findSetsInvocations;
+            reshuffles += result.reshuffles;
+            nanos += result.nanos;
+            gameMillis += result.gameMillis;
+            for (Player.Strategy strategy : result.strategies)
+                players.merge(strategy, 1, Integer::sum);
+            for (int winner : result.winners)
+                wins.merge(result.strategies[winner], 1.0 / result.winners.length, Double::sum);
+        }
+
+        private Stats merge(Stats other) {
+            games += other.games;
+            claims += other.claims;
+            sets += other.sets;
+            findSetsInvocations += other.findSetsInvocations;
+            reshuffles += other.reshuffles;
+            nanos += other.nanos;
+            gameMillis += other.gameMillis;
+            other.players.forEach((strategy, count) -> players.merge(strategy, count, Integer::sum));
+            other.wins.forEach((strategy, count) -> wins.merge(strategy, count, Double::sum));
+            return this;
+        }
+
+        private void print(long wallNanos, int threads) {
+            double seconds = wallNanos / 1e9;
+            System.out.printf("Simulated %d games in %.2f seconds using %d threads.%n", games, seconds, threads);
+            System.out.printf("Games per second:       %.2f%n", games / seconds);
+            System.out.printf("Claims per second:      %.2f%n", claims / seconds);
+            System.out.printf("Average game length:    %.2f ms, %.2f sets%n", nanos / 1e6 / games, (double) sets / games);
+            System.out.printf("Average game time:      %.2f s on the game clock%n", gameMillis / 1e3 / games);
+            System.out.printf("Set finder invocations: %d (%.1f per game)%n", findSetsInvocations, (double) findSetsInvocations / games);
+            System.out.printf("Reshuffles:             %d (%.2f per game)%n", reshuffles, (double) reshuffles / games);
+            System.out.println("Win rate per strategy:");
+            players.forEach((strategy, count) -> System.out.printf("  %-7s %6.2f%% of the games (%d players)%n",
+                    strategy, 100.0 * wins.getOrDefault(strategy, 0.0) / games, count));
+        }
+    }
+
+    /**
+     * Plays a range of games, splitting the range between the workers of the pool.
+     */
+    @SuppressWarnings("serial") // never serialized, it holds the logger and the configuration of the games
+    private static class GamesTask extends RecursiveTask<Stats> {
+
+        private final Logger logger;
+        private final Properties properties;
+        private final int from;
+        private final int to;
+
+        private GamesTask(Logger logger, Properties properties, int from, int to) {
+            this.logger = logger;
+            this.properties = properties;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from == 1) {
+                Stats stats = new Stats();
+                stats.add(playGame(logger, new Config(logger, properties)));
+                return stats;
+            }
+
+            int middle = (from + to) >>> 1;
+            GamesTask left = new GamesTask(logger, properties, from, middle);
+            left.fork();
+            Stats right = new GamesTask(logger, properties, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Plays a single game in the calling thread using the headless user interface.
+     *
+     * @param logger - the logger of the game.
+     * @param config - the game configuration (human players are played as computer players).
+     * @return - the result of the game.
+     */
+    public static GameResult playGame(Logger logger, Config config) {
+        return playGame(logger, config, new HeadlessUserInterface());
+    }
+
+    /**
+     * Plays a single game of computer players with the given user interface.
+     *
+     * @param logger - the logger of the game.
+     * @param config - the configuration of the game.
+     * @param ui     - the user interface (without a window).
+     * @return - the result of the game.
+     */
+    public static GameResult playGame(Logger logger, Config config, UserInterface ui) {
+        UtilImpl util = new UtilImpl(config);
+        Env env = new Env(logger, config, ui, util, config.virtualClock ? new VirtualClock() : GameClock.SYSTEM);
+
+        Player[] players = new Player[config.players];
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        AdminServer admin = Simulator.admin;
+        String name = "game-" + startedGames.incrementAndGet();
+        if (admin != null)
+            admin.register(name, dealer);
+
+        long start = System.nanoTime();
+        long gameStart = env.clock.millis();
+        dealer.run();
+        if (admin != null)
+            admin.unregister(name);
+        return new GameResult(System.nanoTime() - start, env.clock.millis() - gameStart, dealer.claims(), util.findSetsInvocations(), dealer.reshuffles(),
+                players, dealer.winners());
+    }
+
+    /**
+     * Creates the configuration properties of the simulation: the configuration file with no human players and all
+     * delays zeroed (unless the games run on a virtual clock), followed by the overrides given in the command line.
+     *
+     * @param logger    - the logger.
+     * @param overrides - Key=Value pairs.
+     * @return - the simulation properties.
+     */
+    static Properties simulationProperties(Logger logger, String[] overrides) {
+        Properties properties = Config.loadProperties("config.properties", logger);
+        Properties given = new Properties();
+        for (String override : overrides) {
+            int separator = override.indexOf('=');
+            if (separator > 0)
+                given.setProperty(override.substring(0, separator).trim(), override.substring(separator + 1).trim());
+        }
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("Hints", "False");
+        if (!Boolean.parseBoolean(given.getProperty("VirtualClock", properties.getProperty("VirtualClock", "False")))) {
+            // on the wall clock the delays only slow the simulation down, a virtual clock simulates them for free
+            properties.setProperty("TableDelaySeconds", "0");
+            properties.setProperty("PointFreezeSeconds", "0");
+            properties.setProperty("PenaltyFreezeSeconds", "0");
+        }
+        properties.setProperty("StatsFile", "");
+        properties.putAll(given);
+        return properties;
+    }
+
+    public static void main(String[] args) {
+        int position = 0;
+        int games = DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (position < args.length && !args[position].contains("="))
+            games = Integer.parseInt(args[position++]);
+        if (position < args.length && !args[position].contains("="))
+            threads = Integer.parseInt(args[position++]);
+        String[] overrides = Arrays.copyOfRange(args, position, args.length);
+
+        // the games log nothing, the statistics are printed when all games are done
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = simulationProperties(logger, overrides);
+        int adminPort = new Config(logger, properties).adminPort;
+        if (adminPort >= 0) {
+            try {
+                admin = new AdminServer(logger, adminPort);
+                System.out.println("Admin endpoint: http://localhost:" + admin.port() + "/games");
+            } catch (IOException e) {
+                System.out.println("Cannot start the admin endpoint: " + e.getMessage());
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Stats stats = games > 0 ? pool.invoke(new GamesTask(logger, properties, 0, games)) : new Stats();
+        long wallNanos = System.nanoTime() - start;
+        pool.shutdown();
+        if (admin != null)
+            admin.close();
+
+        if (stats.games > 0)
+            stats.print(wallNanos, threads);
+    }
+}
@@ -0,0 +1,113 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * The players holding a token on every slot of the grid, for the token labels of the user interface.
+ *
+ * Every slot keeps only its own holders (in the order they placed their tokens) and its label, and is locked on its
+ * own, so a token change costs O(holders of the slot) no matter how many players there are, and changes on different
+ * slots do not contend. The label shows at most MAX_NAMES names, followed by the number of the other holders, so it
+ * is rebuilt in constant time.
+ */
+class SlotTokens {
+
+    /**
+     * The maximal number of names in a label.
+     */
+    static final int MAX_NAMES = 4;
+
+    /**
+     * The holders of a single slot.
+     */
+    private static final class Holders {
+        int[] players = new int[2];
+        int size;
+        String label = "";
+    }
+
+    private final String[] playerNames;
+    private final Holders[] slots;
+
+    /**
+     * @param tableSize   - the number of slots.
+     * @param playerNames - the names of the players.
+     */
+    SlotTokens(int tableSize, String[] playerNames) {
+        this.playerNames = playerNames;
+        slots = new Holders[tableSize];
+        Arrays.setAll(slots, i -> new Holders());
+    }
+
+    /**
+     * Adds a token of a player to a slot.
+     *
+     * @return - the new label of the slot.
+     */
+    String add(int player, int slot) {
+        Holders holders = slots[slot];
+        synchronized (holders) {
+            for (int i = 0; i < holders.size; i++)
+                if (holders.players[i] == player)
+                    return holders.label;
+            if (holders.size == holders.players.length)
+                holders.players = Arrays.copyOf(holders.players, holders.size * 2);
+            holders.players[holders.size++] = player;
+            holders.label = label(holders);
+            return holders.label;
+        }
+    }
+
+    /**
+     * Removes the token of a player from a slot.
+     *
+     * @return - the new label of the slot.
+     */
+    String remove(int player, int slot) {
+        Holders holders = slots[slot];
+        synchronized (holders) {
+            for (int i = 0; i < holders.size; i++) {
+                if (holders.players[i] == player) {
+                    System.arraycopy(holders.players, i + 1, holders.players, i, holders.size - i - 1);
+                    holders.size--;
+                    holders.label = label(holders);
+                    break;
+                }
+            }
+            return holders.label;
+        }
+    }
+
+    /**
+     * Removes all the tokens from a slot.
+     */
+    void clear(int slot) {
+        Holders holders = slots[slot];
+        synchronized (holders) {
+            holders.size = 0;
+            holders.label = "";
+        }
+    }
+
+    /**
+     * @return - the number of players holding a token on the slot.
+     */
+    int count(int slot) {
+        Holders holders = slots[slot];
+        synchronized (holders) {
+            return holders.size;
+        }
+    }
+
+    private String label(Holders holders) {
+        StringBuilder label = new StringBuilder();
+        for (int i = 0; i < Math.min(holders.size, MAX_NAMES); i++) {
+            if (i > 0)
+                label.append(", ");
+            label.append(playerNames[holders.players[i]]);
+        }
+        if (holders.size > MAX_NAMES)
+            label.append(" +").append(holders.size - MAX_NAMES);
+        return label.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package bguspl.set;
+
+/**
+ * The wall clock: the game time is System.currentTimeMillis and the threads wait in real time.
+ */
+public final class SystemClock implements GameClock {
+
+    SystemClock() {}
+
+    @Override
+    public long millis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis > 0)
+            Thread.sleep(millis);
+    }
+
+    @Override
+    public void await(Object monitor, long millis) throws InterruptedException {
+        monitor.wait(Math.max(millis, 0));
+    }
+
+    @Override
+    public void signalAll(Object monitor) {
+        monitor.notifyAll();
+    }
+
+    @Override
+    public void idle() {
+        Thread.yield();
+    }
+
+    @Override
+    public void attach(Thread thread) {}
+
+    @Override
+    public void detach(Thread thread) {}
+}
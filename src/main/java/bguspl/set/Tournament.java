@@ -0,0 +1,220 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * A knockout tournament of multi-player games: every round seats the remaining players into games of gameSize
+ * players (seeded by rating, so every game gets a similar mix of strong and weak players), plays all of them at the
+ * same time on the game sessions, and advances the best players of every game (by score, then by rating) to the
+ * next round. The winners of the single game of the last round are the champions. A player seated alone (an odd
+ * number of players in games of 2) has a bye: it advances to the next round without playing.
+ *
+ * Usage: Tournament [players] [gameSize] [advancing] [threads] [Key=Value ...]
+ * Plays a tournament of computer players with random ratings; the Key=Value pairs override config.properties.
+ */
+public class Tournament {
+
+    /**
+     * A game of the tournament.
+     */
+    public static final class Game {
+
+        /**
+         * The players in the order they are seated (see GameSessions.seating).
+         */
+        public final List<Matchmaker.Ticket> players;
+
+        public final Simulator.GameResult result;
+
+        Game(List<Matchmaker.Ticket> players, Simulator.GameResult result) {
+            this.players = players;
+            this.result = result;
+        }
+
+        /**
+         * @return - the players from the best to the worst (by score, then by rating).
+         */
+        public List<Matchmaker.Ticket> ranking() {
+            List<Integer> seats = new ArrayList<>();
+            for (int seat = 0; seat < players.size(); seat++)
+                seats.add(seat);
+            seats.sort(Comparator.<Integer>comparingInt(seat -> -result.scores[seat])
+                    .thenComparingDouble(seat -> -players.get(seat).rating));
+            List<Matchmaker.Ticket> ranking = new ArrayList<>();
+            for (int seat : seats)
+                ranking.add(players.get(seat));
+            return ranking;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Matchmaker.Ticket player : ranking())
+                text.append(text.length() > 0 ? ", " : "").append(player)
+                        .append(": ").append(result.scores[players.indexOf(player)]);
+            return text.toString();
+        }
+    }
+
+    private final GameSessions sessions;
+    private final int gameSize;
+
+    /**
+     * The number of players of every game that advance to the next round.
+     */
+    private final int advancing;
+
+    /**
+     * The rounds played so far, the games of every round.
+     */
+    private final List<List<Game>> rounds = new ArrayList<>();
+
+    /**
+     * The players that advanced without playing, in every round played so far.
+     */
+    private final List<List<Matchmaker.Ticket>> byes = new ArrayList<>();
+
+    /**
+     * @param sessions  - plays the games.
+     * @param gameSize  - the number of players of a game (the games of a round may have one player less, see seed).
+     * @param advancing - the number of players of every game that advance to the next round.
+     */
+    public Tournament(GameSessions sessions, int gameSize, int advancing) {
+        if (gameSize < 2 || advancing < 1 || advancing >= gameSize)
+            throw new IllegalArgumentException("cannot advance " + advancing + " of every " + gameSize + " players");
+        this.sessions = sessions;
+        this.gameSize = gameSize;
+        this.advancing = advancing;
+    }
+
+    /**
+     * Plays the tournament.
+     *
+     * @param entrants - the players (at least 1).
+     * @return - the champions: the winners of the final game (more than one if it is a tie).
+     */
+    public List<Matchmaker.Ticket> play(List<Matchmaker.Ticket> entrants) {
+        if (entrants.isEmpty())
+            throw new IllegalArgumentException("a tournament needs players");
+        List<Matchmaker.Ticket> remaining = new ArrayList<>(entrants);
+        while (true) {
+            List<List<Matchmaker.Ticket>> groups = seed(remaining);
+            List<Matchmaker.Ticket> bye = new ArrayList<>();
+            if (groups.size() > 1)
+                for (Iterator<List<Matchmaker.Ticket>> i = groups.iterator(); i.hasNext(); ) {
+                    List<Matchmaker.Ticket> group = i.next();
+                    if (group.size() == 1) {
+                        bye.addAll(group);
+                        i.remove();
+                    }
+                }
+            List<CompletableFuture<Simulator.GameResult>> results = new ArrayList<>();
+            for (List<Matchmaker.Ticket> group : groups)
+                results.add(sessions.launch(group));
+
+            List<Game> round = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i++)
+                round.add(new Game(GameSessions.seating(groups.get(i)), results.get(i).join()));
+            rounds.add(round);
+            byes.add(bye);
+
+            if (round.size() == 1 && bye.isEmpty()) {
+                Game last = round.get(0);
+                List<Matchmaker.Ticket> champions = new ArrayList<>();
+                for (int winner : last.result.winners)
+                    champions.add(last.players.get(winner));
+                return champions;
+            }
+
+            // every game drops at least one player, so the rounds end
+            remaining = new ArrayList<>(bye);
+            for (Game game : round)
+                remaining.addAll(game.ranking().subList(0, Math.min(advancing, game.players.size() - 1)));
+        }
+    }
+
+    /**
+     * @return - the games of every round played so far.
+     */
+    public List<List<Game>> rounds() {
+        return Collections.unmodifiableList(rounds);
+    }
+
+    /**
+     * @return - the players that advanced without playing, in every round played so far.
+     */
+    public List<List<Matchmaker.Ticket>> byes() {
+        return Collections.unmodifiableList(byes);
+    }
+
+    /**
+     * Seats the players of a round: the players are dealt by descending rating to the games back and forth
+     * (1, 2, ..., n, n, ..., 2, 1, 1, 2, ...), so the ratings of the games are balanced. The games differ by at most
+     * one player, so a game has a single player only if gameSize is 2 and the number of players is odd.
+     */
+    private List<List<Matchmaker.Ticket>> seed(List<Matchmaker.Ticket> players) {
+        List<Matchmaker.Ticket> sorted = new ArrayList<>(players);
+        sorted.sort(Comparator.<Matchmaker.Ticket>comparingDouble(player -> -player.rating));
+        int games = (sorted.size() + gameSize - 1) / gameSize;
+        List<List<Matchmaker.Ticket>> groups = new ArrayList<>();
+        for (int game = 0; game < games; game++)
+            groups.add(new ArrayList<>());
+        for (int i = 0; i < sorted.size(); i++) {
+            int pass = i / games, offset = i % games;
+            groups.get(pass % 2 == 0 ? offset : games - 1 - offset).add(sorted.get(i));
+        }
+        return groups;
+    }
+
+    public static void main(String[] args) {
+        int position = 0;
+        int[] values = {16, 4, 1, Runtime.getRuntime().availableProcessors()};
+        for (int i = 0; i < values.length && position < args.length && !args[position].contains("="); i++)
+            values[i] = Integer.parseInt(args[position++]);
+        int players = values[0], gameSize = values[1], advancing = values[2], threads = values[3];
+        String[] overrides = Arrays.copyOfRange(args, position, args.length);
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = Simulator.simulationProperties(logger, overrides);
+
+        // the smart players are rated higher, with some noise
+        Random random = new Random(42);
+        List<Matchmaker.Ticket> entrants = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            boolean smart = i % 2 == 0;
+            entrants.add(new Matchmaker.Ticket("Bot " + (i + 1), false, smart ? "SMART" : "RANDOM",
+                    (smart ? 1600 : 1200) + random.nextGaussian() * 100, gameSize));
+        }
+
+        long start = System.nanoTime();
+        List<Matchmaker.Ticket> champions;
+        Tournament tournament;
+        try (GameSessions sessions = new GameSessions(logger, properties, threads)) {
+            tournament = new Tournament(sessions, gameSize, advancing);
+            champions = tournament.play(entrants);
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        System.out.printf("Tournament of %d players in games of %d, %d advancing per game:%n", players, gameSize, advancing);
+        for (int round = 0; round < tournament.rounds().size(); round++) {
+            List<Game> games = tournament.rounds().get(round);
+            System.out.printf("Round %d (%d games):%n", round + 1, games.size());
+            for (Game game : games)
+                System.out.printf("  %s%n", game);
+            for (Matchmaker.Ticket player : tournament.byes().get(round))
+                System.out.printf("  %s: bye%n", player);
+        }
+        System.out.printf("Champion%s: %s%n", champions.size() > 1 ? "s" : "", champions);
+        System.out.printf("Played in %.2f seconds using %d threads.%n", wallNanos / 1e9, threads);
+    }
+}
@@ -1,5 +1,7 @@
 package bguspl.set;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This interface contains all methods used to display the graphical user interface.
  */
@@ -71,6 +73,17 @@ public interface UserInterface {
      */
     void removeToken(int player, int slot);
 
+    /**
+     * Remove the cards and all the players names text in the specified slots, as a single update.
+     * @param slots - the slot numbers (for grid; slot = row*row.length + column).
+     */
+    default void removeCards(int[] slots) {
+        for (int slot : slots) {
+            removeTokens(slot);
+            removeCard(slot);
+        }
+    }
+
     /**
      * Hide player score panel from view and show text announcing the winner(s).
      * If players length == 1, declare him as a winner.
@@ -78,4 +91,18 @@ public interface UserInterface {
      * @param players - the players ids.
      */
     void announceWinner(int[] players);
+
+    /**
+     * Close the user interface and release its resources (e.g. the window).
+     */
+    void dispose();
+
+    /**
+     * Returns a future completed when the user interface can display the cards (e.g. their images were loaded).
+     * The dealer waits for it before dealing.
+     * @return - the readiness future.
+     */
+    default CompletableFuture<Void> ready() {
+        return CompletableFuture.completedFuture(null);
+    }
 }
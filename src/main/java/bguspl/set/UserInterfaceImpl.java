@@ -1,10 +1,17 @@
 package bguspl.set;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,10 +29,57 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
     private final Logger logger;
     private final Config config;
 
+    /**
+     * The images of all the cards of every deck (by FeatureCount and FeatureSize), decoded once and shared by all the
+     * windows of the process. The images are never modified, only drawn.
+     */
+    private static final ConcurrentMap<String, CompletableFuture<Image[]>> decks = new ConcurrentHashMap<>();
+
+    /**
+     * The image of an empty slot (loaded on first use).
+     */
+    private static volatile Image emptyCard;
+
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
+    private static Image loadImageResource(String filename) {
+        URL imageResource = UserInterfaceImpl.class.getClassLoader().getResource(filename);
+        if (imageResource == null)
+            throw new RuntimeException(new FileNotFoundException(filename));
+        try {
+            return ImageIO.read(imageResource);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return - the images of all the cards of the configured deck, decoded in parallel on the common pool by the
+     * first window that shows this deck.
+     */
+    private static CompletableFuture<Image[]> loadDeck(Config config, Logger logger) {
+        return decks.computeIfAbsent(config.featureCount + "x" + config.featureSize, key -> {
+            long start = System.nanoTime();
+            return CompletableFuture.supplyAsync(() -> IntStream.range(0, config.deckSize).parallel()
+                    .mapToObj(i -> loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png"))
+                    .toArray(Image[]::new))
+                    .whenComplete((images, e) -> {
+                        if (e != null)
+                            logger.log(Level.SEVERE, "cannot load the card images: " + e.getCause());
+                        else
+                            logger.log(Level.INFO, format("loaded %d card images in %.1f ms", images.length, (System.nanoTime() - start) / 1e6));
+                    });
+        });
+    }
+
+    private static Image loadEmptyCard() {
+        if (emptyCard == null)
+            emptyCard = loadImageResource("cards/empty_card.png");
+        return emptyCard;
+    }
+
     public UserInterfaceImpl(Logger logger, Config config) {
 
         this.logger = logger;
@@ -97,18 +151,15 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
     private class GamePanel extends JLayeredPane {
 
         private final Image emptyCard;
-        private final Image[] deck;
+
+        /**
+         * The images of all the cards, decoded in the background while the game initializes (see loadDeck).
+         */
+        private final CompletableFuture<Image[]> deck;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
+        private final SlotTokens tokens;
         private final JLabel[][] tokenText;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
-
         private GamePanel() {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
@@ -116,15 +167,13 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
             // init deck and load all pictures from png files
             assert config.featureSize < 10; // otherwise there will be naming conflicts
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
+            // load the image resources (shared by all the windows of the same deck)
+            deck = loadDeck(config, logger);
+            emptyCard = loadEmptyCard();
 
             grid = new Image[config.rows][config.columns];
             tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
+            tokens = new SlotTokens(config.tableSize, config.playerNames);
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
@@ -146,7 +195,7 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
             logger.log(Level.SEVERE, "placing card " + card + " in slot " + slot);
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = deck[card];
+            grid[row][column] = deck.join()[card];
             validate();
             repaint();
         }
@@ -164,8 +213,7 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
             logger.log(Level.SEVERE, "player " + player + " placing token on slot " + slot);
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            tokenText[row][column].setText(tokens.add(player, slot));
         }
 
         private void removeTokens() {
@@ -178,29 +226,28 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
             logger.log(Level.SEVERE, "removing tokens from slot " + slot);
             int row = slot / config.columns;
             int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            tokens.clear(slot);
+            tokenText[row][column].setText("");
         }
 
         private void removeToken(int player, int slot) {
             logger.log(Level.SEVERE, "removing player " + player + " token from slot " + slot);
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            tokenText[row][column].setText(tokens.remove(player, slot));
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+        private void removeCards(int[] slots) {
+            logger.log(Level.SEVERE, "removing cards and tokens from slots " + Arrays.toString(slots));
+            for (int slot : slots) {
+                int row = slot / config.columns;
+                int column = slot % config.columns;
+                grid[row][column] = emptyCard;
+                tokens.clear(slot);
+                tokenText[row][column].setText("");
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+            validate();
+            repaint();
         }
 
         @Override
@@ -213,26 +260,50 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
         }
     }
 
+    /**
+     * The players panel shows one column per player, up to this number of players. With more players it shows a
+     * scrolling list with one row per player.
+     */
+    private static final int MAX_PLAYER_COLUMNS = 8;
+
+    /**
+     * The number of players visible at once in the scrolling list.
+     */
+    private static final int VISIBLE_PLAYER_ROWS = 8;
+
     private class PlayersPanel extends JPanel {
 
         private final JLabel[][] playersTable;
 
         private PlayersPanel() {
-            this.setLayout(new GridLayout(2, config.players));
-            this.setPreferredSize(new Dimension(config.players * config.PlayerCellWidth, config.rows * config.PlayerCellHeight));
             this.playersTable = new JLabel[2][config.players];
             for (int i = 0; i < config.players; i++) {
                 this.playersTable[0][i] = new JLabel(config.playerNames[i]);
                 this.playersTable[0][i].setFont(new Font("Serif", Font.BOLD, config.fontSize));
                 this.playersTable[0][i].setHorizontalAlignment(JLabel.CENTER);
-                this.add(playersTable[0][i]);
-            }
-
-            for (int i = 0; i < config.players; i++) {
                 this.playersTable[1][i] = new JLabel("0");
                 this.playersTable[1][i].setFont(new Font("Serif", Font.PLAIN, config.fontSize));
                 this.playersTable[1][i].setHorizontalAlignment(JLabel.CENTER);
-                this.add(playersTable[1][i]);
+            }
+
+            if (config.players <= MAX_PLAYER_COLUMNS) {
+                this.setLayout(new GridLayout(2, config.players));
+                this.setPreferredSize(new Dimension(config.players * config.PlayerCellWidth, config.rows * config.PlayerCellHeight));
+                for (int i = 0; i < config.players; i++)
+                    this.add(playersTable[0][i]);
+                for (int i = 0; i < config.players; i++)
+                    this.add(playersTable[1][i]);
+            } else {
+                JPanel list = new JPanel(new GridLayout(config.players, 2));
+                for (int i = 0; i < config.players; i++) {
+                    list.add(playersTable[0][i]);
+                    list.add(playersTable[1][i]);
+                }
+                JScrollPane scrollPane = new JScrollPane(list, JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+                scrollPane.getVerticalScrollBar().setUnitIncrement(config.PlayerCellHeight);
+                scrollPane.setPreferredSize(new Dimension(2 * config.PlayerCellWidth, VISIBLE_PLAYER_ROWS * config.PlayerCellHeight));
+                this.setLayout(new BorderLayout());
+                this.add(scrollPane, BorderLayout.CENTER);
             }
         }
 
@@ -281,6 +352,11 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
         }
     }
 
+    @Override
+    public CompletableFuture<Void> ready() {
+        return gamePanel.deck.thenApply(images -> null);
+    }
+
     @Override
     public void placeCard(int card, int slot) {
         gamePanel.placeCard(slot, card);
@@ -329,6 +405,11 @@ public class UserInterfaceImpl extends JFrame implements UserInterface {
         gamePanel.removeToken(player, slot);
     }
 
+    @Override
+    public void removeCards(int[] slots) {
+        gamePanel.removeCards(slots);
+    }
+
     @Override
     public void announceWinner(int[] players) {
         playersPanel.setVisible(false);
@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -21,6 +22,12 @@ public interface Util {
      */
     int[][] cardsToFeatures(int[] cards);
 
+    /**
+     * Returns the rule that decides which cards form a legal set.
+     * @return      - the set rule (see Config.setRule).
+     */
+    SetRule setRule();
+
     /**
      * Checks if an array of cards forms a legal set.
      * @param cards - the array of cards.
@@ -28,6 +35,21 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks many candidates at once (faster than calling testSet for each of them).
+     * @param candidates - the card ids of the candidates, k per candidate (candidate i starts at i * k).
+     * @param k          - the number of cards in a candidate (the set size).
+     * @param legal      - bit i is set iff candidate i forms a legal set (the other bits of the candidates are
+     *                     cleared, the bits after them are left as they are).
+     */
+    default void testSets(int[] candidates, int k, BitSet legal) {
+        int[] cards = new int[k];
+        for (int i = 0; i < candidates.length / k; ++i) {
+            System.arraycopy(candidates, i * k, cards, 0, k);
+            legal.set(i, testSet(cards));
+        }
+    }
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      * @param deck  - a collection of cards (may not include null objects).
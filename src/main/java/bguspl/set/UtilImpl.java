@@ -1,8 +1,16 @@
 package bguspl.set;
 
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 
 /**
@@ -12,80 +20,176 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The number of cards from which findSets splits the search between the workers of the common pool
+     * (smaller collections, e.g. the cards on the table, are searched sequentially).
+     */
+    private static final int PARALLEL_THRESHOLD = 128;
+
+    /**
+     * The number of candidates findSets tests at once.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The number of times findSets was called (used for simulation statistics).
+     */
+    private final AtomicLong findSetsInvocations = new AtomicLong();
+
+    /**
+     * The rule that decides which cards form a legal set.
+     */
+    private final SetRule rule;
+
+    /**
+     * The features of the cards, shared with the other games of the same deck.
+     */
+    private final SharedResources resources;
+
     public UtilImpl(Config config) {
+        this(config, SharedResources.of(config).rule);
+    }
+
+    public UtilImpl(Config config, SetRule rule) {
         this.config = config;
+        this.rule = rule;
+        this.resources = SharedResources.of(config);
     }
 
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
-        }
+    /**
+     * @return - the number of times findSets was called on this object.
+     */
+    public long findSetsInvocations() {
+        return findSetsInvocations.get();
     }
 
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        return resources.features(card);
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
         int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        IntStream.range(0, cards.length).forEach(i -> resources.features(cards[i], features[i]));
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
-
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
-
-            if (sameSame == butDifferent) return false;
-        }
-        return true;
+        return rule.test(cards);
+    }
+
+    @Override
+    public void testSets(int[] candidates, int k, BitSet legal) {
+        if (k == rule.size())
+            rule.testAll(candidates, legal);
+        else
+            Util.super.testSets(candidates, k, legal);
+    }
+
+    @Override
+    public SetRule setRule() {
+        return rule;
     }
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
+        findSetsInvocations.incrementAndGet();
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        int r = rule.size();
+        if (cards.length < r)
+            return new LinkedList<>();
+
+        if (cards.length < PARALLEL_THRESHOLD) {
+            LinkedList<int[]> sets = new LinkedList<>();
+            findSets(cards, 0, cards.length, count, new AtomicInteger(), sets);
+            return sets;
+        }
+
+        Queue<int[]> sets = new ConcurrentLinkedQueue<>();
+        ForkJoinPool.commonPool().invoke(new FindSetsTask(cards, 0, cards.length - r + 1, count, new AtomicInteger(), sets));
+        return new LinkedList<>(sets);
+    }
+
+    /**
+     * Finds the sets whose first card (by index in the cards array) is in the range [from, to).
+     *
+     * @param cards - the cards to search in.
+     * @param from  - the first index of the first card (inclusive).
+     * @param to    - the last index of the first card (exclusive).
+     * @param count - the maximum number of sets to find (in all ranges).
+     * @param found - the number of sets found so far (in all ranges).
+     * @param sets  - the collection the sets are added to.
+     */
+    private void findSets(int[] cards, int from, int to, int count, AtomicInteger found, Collection<int[]> sets) {
+        int n = cards.length;
+        int r = rule.size();
         int[] combination = new int[r];
+        int[] batch = new int[BATCH_SIZE * r];
+        BitSet legal = new BitSet(BATCH_SIZE);
 
         for (int i = 0; i < r; ++i)
-            combination[i] = i;
+            combination[i] = from + i;
+
+        while (combination[0] < to && combination[r - 1] < n && found.get() < count) {
+            int candidates = 0;
+            for (; candidates < BATCH_SIZE && combination[0] < to && combination[r - 1] < n; ++candidates) {
+                for (int i = 0; i < r; ++i)
+                    batch[candidates * r + i] = cards[combination[i]];
+
+                // generate next combination in lexicographic order
+                int t = r - 1;
+                while (t != 0 && combination[t] == n - r + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            }
+
+            rule.testAll(candidates == BATCH_SIZE ? batch : Arrays.copyOf(batch, candidates * r), legal);
+            for (int i = legal.nextSetBit(0); i >= 0 && i < candidates; i = legal.nextSetBit(i + 1)) {
+                int[] set = Arrays.copyOfRange(batch, i * r, (i + 1) * r);
+                Arrays.sort(set);
+                if (found.incrementAndGet() > count) return;
+                sets.add(set);
+            }
+        }
+    }
+
+    /**
+     * Splits the range of the first card of a set between the workers of the pool.
+     * The ranges are split until the cards that follow the range are few enough to be searched sequentially.
+     */
+    @SuppressWarnings("serial") // never serialized, it searches the cards of a single call
+    private class FindSetsTask extends RecursiveAction {
+
+        private final int[] cards;
+        private final int from;
+        private final int to;
+        private final int count;
+        private final AtomicInteger found;
+        private final Collection<int[]> sets;
+
+        private FindSetsTask(int[] cards, int from, int to, int count, AtomicInteger found, Collection<int[]> sets) {
+            this.cards = cards;
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.found = found;
+            this.sets = sets;
+        }
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        @Override
+        protected void compute() {
+            if (found.get() >= count)
+                return;
+            if (to - from <= 1 || cards.length - from < PARALLEL_THRESHOLD) {
+                findSets(cards, from, to, count, found, sets);
+                return;
             }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            int middle = (from + to) >>> 1;
+            invokeAll(new FindSetsTask(cards, from, middle, count, found, sets),
+                    new FindSetsTask(cards, middle, to, count, found, sets));
         }
-        return sets;
     }
 }
@@ -0,0 +1,269 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A discrete-event clock: the time stands still while any thread of the game works, and jumps to the earliest
+ * deadline (the end of a sleep or of a timed wait) as soon as all of them wait for the clock. The timeouts, freezes
+ * and delays of a game therefore keep their exact lengths and order, but take no wall-clock time.
+ *
+ * A thread of the game counts as working unless it waits in sleep, await or idle, so the game threads must block
+ * only through this clock (or for a short time on a lock): a thread blocked elsewhere, e.g. on the pause lock of the
+ * dealer, stops the time until it continues. The time starts at 0.
+ *
+ * Lock order: the monitor passed to await and signalAll, then the clock.
+ */
+public class VirtualClock implements GameClock {
+
+    /**
+     * A thread waiting for the clock.
+     */
+    private static final class Waiter {
+
+        final Thread thread;
+
+        /**
+         * The monitor the thread waits on (null if it waits on the clock itself).
+         */
+        final Object monitor;
+
+        /**
+         * The time the thread wakes up at (Long.MAX_VALUE if it waits to be signaled).
+         */
+        final long deadline;
+
+        /**
+         * True iff the thread waits in idle, i.e. for any other thread to make progress.
+         */
+        final boolean idle;
+
+        /**
+         * Orders the waiters of the same deadline by their arrival.
+         */
+        final long sequence;
+
+        /**
+         * True iff the thread is part of the game (and was therefore subtracted from the working threads).
+         */
+        final boolean counted;
+
+        boolean woken;
+
+        Waiter(Thread thread, Object monitor, long deadline, boolean idle, long sequence, boolean counted) {
+            this.thread = thread;
+            this.monitor = monitor;
+            this.deadline = deadline;
+            this.idle = idle;
+            this.sequence = sequence;
+            this.counted = counted;
+        }
+    }
+
+    /**
+     * The current time.
+     */
+    private long now;
+
+    private long sequence;
+
+    /**
+     * The threads of the game, and the number of them that are not waiting for the clock.
+     */
+    private final Set<Thread> attached = new HashSet<>();
+    private int working;
+
+    /**
+     * The waiters with a deadline, earliest first, and all the waiters.
+     */
+    private final PriorityQueue<Waiter> timed = new PriorityQueue<>(
+            Comparator.<Waiter>comparingLong(waiter -> waiter.deadline).thenComparingLong(waiter -> waiter.sequence));
+    private final List<Waiter> waiting = new ArrayList<>();
+
+    /**
+     * The number of times the time jumped forward.
+     */
+    private long advances;
+
+    @Override
+    public synchronized long millis() {
+        return now;
+    }
+
+    /**
+     * @return - the number of times the time jumped to the next deadline.
+     */
+    public synchronized long advances() {
+        return advances;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis <= 0) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return;
+        }
+        Waiter waiter;
+        List<Object> monitors;
+        synchronized (this) {
+            waiter = enter(null, now + millis, false);
+            monitors = advanceIfAllWaiting();
+        }
+        signal(monitors);
+        synchronized (this) {
+            try {
+                while (!waiter.woken)
+                    wait();
+            } catch (InterruptedException e) {
+                leave(waiter);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void await(Object monitor, long millis) throws InterruptedException {
+        Waiter waiter;
+        List<Object> monitors;
+        synchronized (this) {
+            waiter = enter(monitor, millis > 0 ? now + millis : Long.MAX_VALUE, false);
+            monitors = advanceIfAllWaiting();
+        }
+        signal(monitors);
+        try {
+            while (!woken(waiter))
+                monitor.wait();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                leave(waiter);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void signalAll(Object monitor) {
+        synchronized (this) {
+            for (Waiter waiter : new ArrayList<>(waiting))
+                if (waiter.monitor == monitor)
+                    wake(waiter);
+        }
+        monitor.notifyAll();
+    }
+
+    @Override
+    public void idle() {
+        Waiter waiter;
+        List<Object> monitors;
+        synchronized (this) {
+            waiter = enter(null, Long.MAX_VALUE, true);
+            monitors = advanceIfAllWaiting();
+        }
+        signal(monitors);
+        synchronized (this) {
+            try {
+                while (!waiter.woken)
+                    wait();
+            } catch (InterruptedException e) {
+                leave(waiter);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void attach(Thread thread) {
+        if (attached.add(thread))
+            working++;
+    }
+
+    @Override
+    public void detach(Thread thread) {
+        List<Object> monitors;
+        synchronized (this) {
+            if (!attached.remove(thread))
+                return;
+            working--;
+            monitors = advanceIfAllWaiting();
+        }
+        signal(monitors);
+    }
+
+    /**
+     * Registers the calling thread as waiting. A thread that starts waiting after it worked may have changed the
+     * game, so the idle threads are woken up to look at it again.
+     */
+    private Waiter enter(Object monitor, long deadline, boolean idle) {
+        boolean counted = attached.contains(Thread.currentThread());
+        Waiter waiter = new Waiter(Thread.currentThread(), monitor, deadline, idle, sequence++, counted);
+        if (counted)
+            working--;
+        if (!idle)
+            for (Waiter other : new ArrayList<>(waiting))
+                if (other.idle)
+                    wake(other);
+        waiting.add(waiter);
+        if (deadline != Long.MAX_VALUE)
+            timed.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Unregisters a waiter that was interrupted (unless it was woken up already).
+     */
+    private void leave(Waiter waiter) {
+        if (!waiter.woken)
+            wake(waiter);
+    }
+
+    private synchronized boolean woken(Waiter waiter) {
+        return waiter.woken;
+    }
+
+    private void wake(Waiter waiter) {
+        waiter.woken = true;
+        waiting.remove(waiter);
+        timed.remove(waiter);
+        if (waiter.counted && attached.contains(waiter.thread))
+            working++;
+        notifyAll();
+    }
+
+    /**
+     * Moves the time to the earliest deadline if all the threads of the game wait for the clock, and wakes the
+     * threads whose deadline passed and the idle threads.
+     *
+     * @return - the monitors the woken threads wait on, to be signaled after the clock is released.
+     */
+    private List<Object> advanceIfAllWaiting() {
+        if (working > 0 || attached.isEmpty() || timed.isEmpty())
+            return Collections.emptyList();
+        now = Math.max(now, timed.peek().deadline);
+        advances++;
+        List<Object> monitors = new ArrayList<>();
+        while (!timed.isEmpty() && timed.peek().deadline <= now) {
+            Waiter waiter = timed.peek();
+            wake(waiter);
+            if (waiter.monitor != null && !monitors.contains(waiter.monitor))
+                monitors.add(waiter.monitor);
+        }
+        for (Waiter waiter : new ArrayList<>(waiting))
+            if (waiter.idle)
+                wake(waiter);
+        return monitors;
+    }
+
+    private static void signal(List<Object> monitors) {
+        for (Object monitor : monitors) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+}
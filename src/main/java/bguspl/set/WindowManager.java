@@ -12,7 +12,7 @@ import java.util.logging.Level;
 public class WindowManager implements WindowListener {
 
     /**
-     * The main thread.
+     * The thread the game runs on, waited for when the window closes (the main thread by default).
      */
     private final Thread mainThread;
 
@@ -23,8 +23,17 @@ public class WindowManager implements WindowListener {
     private final Env env;
 
     public WindowManager(Env env, Dealer dealer) {
+        this(env, dealer, Thread.currentThread());
+    }
+
+    /**
+     * @param env        - the game environment.
+     * @param dealer     - the dealer of the game.
+     * @param gameThread - the thread the game runs on (e.g. the dealer thread of a game session).
+     */
+    public WindowManager(Env env, Dealer dealer, Thread gameThread) {
         this.env = env;
-        mainThread = Thread.currentThread();
+        mainThread = gameThread;
         this.dealer = dealer;
     }
 
@@ -36,8 +45,11 @@ public class WindowManager implements WindowListener {
     @Override
     public void windowClosing(WindowEvent e) {
         env.logger.log(Level.SEVERE, "Exit button pressed");
+        // the dealer saves a snapshot of the game (if enabled) before its thread ends
         dealer.terminate();
-        try { mainThread.join(); } catch (InterruptedException ignored) {}
+        try { mainThread.join(2 * env.config.shutdownTimeoutMillis); } catch (InterruptedException ignored) {}
+        if (mainThread.isAlive())
+            env.logger.log(Level.WARNING, "the game did not stop in time, exiting anyway");
         env.logger.log(Level.INFO, "Thanks for playing... it was fun!");
     }
 
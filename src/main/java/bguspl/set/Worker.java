@@ -0,0 +1,136 @@
+package bguspl.set;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process that plays the games a coordinator places on it (see Coordinator for the protocol), with the same
+ * engine as the Simulator: every game runs without a window on the game sessions of the process.
+ *
+ * Usage: Worker host:port [name] [capacity] [Key=Value ...]
+ * The capacity is the number of games played at the same time (the number of processors by default). The Key=Value
+ * pairs override config.properties for all the games of the worker, and the properties sent with every game override
+ * those.
+ */
+public class Worker {
+
+    private final String name;
+    private final int capacity;
+    private final Logger logger;
+    private final GameSessions sessions;
+
+    private PrintWriter out;
+
+    /**
+     * True after the coordinator asked the worker to leave (guarded by this).
+     */
+    private boolean draining;
+
+    /**
+     * @param logger     - the logger of the games.
+     * @param properties - the configuration of every game.
+     * @param name       - the name of the worker (unique among the workers of the coordinator).
+     * @param capacity   - the number of games played at the same time.
+     */
+    public Worker(Logger logger, Properties properties, String name, int capacity) {
+        this.logger = logger;
+        this.name = name;
+        this.capacity = capacity;
+        sessions = new GameSessions(logger, properties, capacity);
+    }
+
+    /**
+     * Connects to the coordinator and plays the games it places until it drains the worker or disconnects.
+     *
+     * @param host - the host of the coordinator.
+     * @param port - the port of the coordinator.
+     * @throws IOException - if the connection to the coordinator fails.
+     */
+    public void run(String host, int port) throws IOException {
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            send("HELLO " + name + " " + capacity);
+            heartbeats.scheduleAtFixedRate(() -> send("HEARTBEAT " + sessions.running()),
+                    Coordinator.HEARTBEAT_MILLIS, Coordinator.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] message = line.trim().split(" ");
+                if (message[0].equals("START") && message.length == 3)
+                    start(Long.parseLong(message[1]), Coordinator.decode(message[2]));
+                else if (message[0].equals("DRAIN"))
+                    drain();
+                else
+                    logger.log(Level.WARNING, "unknown message from the coordinator: " + line);
+            }
+        } finally {
+            heartbeats.shutdownNow();
+            sessions.close();
+        }
+    }
+
+    private void start(long session, Properties properties) {
+        sessions.launch(properties).whenComplete((result, e) -> {
+            if (e != null) {
+                // whenComplete sees the failure of the game wrapped when it came from a dependent stage
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                send("FAILED " + session + " " + cause.toString().replaceAll("\\s+", " "));
+            } else
+                send(String.format("RESULT %d %d %d %s %s", session, result.gameMillis, result.sets,
+                        Coordinator.ints(result.winners), Coordinator.ints(result.scores)));
+            synchronized (this) {
+                if (draining && sessions.running() == 0)
+                    send("BYE");
+            }
+        });
+    }
+
+    private synchronized void drain() {
+        draining = true;
+        if (sessions.running() == 0)
+            send("BYE");
+    }
+
+    private synchronized void send(String message) {
+        out.println(message);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || !args[0].contains(":")) {
+            System.out.println("Usage: Worker host:port [name] [capacity] [Key=Value ...]");
+            return;
+        }
+        String host = args[0].substring(0, args[0].lastIndexOf(':'));
+        int port = Integer.parseInt(args[0].substring(args[0].lastIndexOf(':') + 1));
+        int position = 1;
+        String name = position < args.length && !args[position].contains("=") ? args[position++] : ManagementFactory.getRuntimeMXBean().getName();
+        int capacity = position < args.length && !args[position].contains("=")
+                ? Integer.parseInt(args[position++]) : Runtime.getRuntime().availableProcessors();
+
+        // only the warnings are logged, the coordinator collects the results of the games
+        Logger logger = Logger.getLogger("SetWorker");
+        logger.setLevel(Level.WARNING);
+        Properties properties = Simulator.simulationProperties(logger, Arrays.copyOfRange(args, position, args.length));
+        new Worker(logger, properties, name, capacity).run(host, port);
+    }
+}
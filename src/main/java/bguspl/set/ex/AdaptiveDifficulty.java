@@ -0,0 +1,122 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+/**
+ * Adapts the difficulty of the game to the players between rounds.
+ *
+ * The claims update two exponentially weighted moving averages (the time it takes to find a set after the table
+ * changed, and the share of claims that were sets) in O(1). Between rounds the averages are turned into:
+ * - a factor of the turn timeout: about four times the average time to find a set, between half and twice the
+ *   configured timeout, and longer after a round in which nobody found a set;
+ * - factors of the freezes: longer penalties for players who claim wrong sets often, and a longer point freeze when
+ *   the sets are found fast (giving the other players a chance);
+ * - the number of cards dealt: fewer cards for fast players and more for slow ones, between the table size minus a
+ *   row and the table size. More cards are also dealt whenever the dealt cards have no set.
+ * The factors apply to the current configuration, so they keep working when the configuration is reloaded.
+ */
+public class AdaptiveDifficulty {
+
+    /**
+     * The weight of a new sample in the moving averages.
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * The limits of all the factors.
+     */
+    private static final double MIN_FACTOR = 0.5, MAX_FACTOR = 2;
+
+    /**
+     * The share of the turn an average set should take.
+     */
+    private static final double SETS_PER_TURN = 4;
+
+    /**
+     * The moving averages (NaN until the first sample).
+     */
+    private double timeToSetMillis = Double.NaN, successRatio = Double.NaN;
+
+    /**
+     * The number of sets found in the current round.
+     */
+    private int roundSets;
+
+    private volatile double timeoutFactor = 1, penaltyFactor = 1, pointFactor = 1;
+    private volatile int dealtCards;
+    private final int minDealt, maxDealt;
+
+    /**
+     * @param config - the game configuration (table size, columns and set size).
+     */
+    public AdaptiveDifficulty(Config config) {
+        maxDealt = config.tableSize;
+        minDealt = Math.min(maxDealt, Math.max(config.setSize, config.tableSize - config.columns));
+        dealtCards = maxDealt;
+    }
+
+    /**
+     * Records a claim. Called on the claim path, so it only updates the averages.
+     *
+     * @param set          - true iff the claim was a legal set.
+     * @param searchMillis - the time since the table last changed (for a legal set).
+     */
+    synchronized void claimed(boolean set, long searchMillis) {
+        successRatio = average(successRatio, set ? 1 : 0);
+        if (set) {
+            timeToSetMillis = average(timeToSetMillis, searchMillis);
+            roundSets++;
+        }
+    }
+
+    private static double average(double average, double sample) {
+        return Double.isNaN(average) ? sample : average + ALPHA * (sample - average);
+    }
+
+    private static double clamp(double factor) {
+        return Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, factor));
+    }
+
+    /**
+     * Adapts the difficulty to the averages, between rounds.
+     *
+     * @param config - the current configuration.
+     * @return - a description of the new difficulty.
+     */
+    synchronized String adapt(Config config) {
+        if (roundSets == 0)
+            timeoutFactor = clamp(timeoutFactor * 1.25); // nobody found a set in time
+        else if (config.turnTimeoutMillis > 0)
+            timeoutFactor = clamp(SETS_PER_TURN * timeToSetMillis / config.turnTimeoutMillis);
+        pointFactor = clamp(2 - timeoutFactor);
+        if (!Double.isNaN(successRatio))
+            penaltyFactor = clamp(1 + 2 * (0.5 - successRatio));
+
+        if (roundSets == 0 || timeoutFactor > 1)
+            dealtCards = Math.min(maxDealt, dealtCards + 1);
+        else if (timeoutFactor < 1)
+            dealtCards = Math.max(minDealt, dealtCards - 1);
+        roundSets = 0;
+        return String.format("timeout x%.2f, point freeze x%.2f, penalty freeze x%.2f, %d cards dealt",
+                timeoutFactor, pointFactor, penaltyFactor, dealtCards);
+    }
+
+    long turnTimeoutMillis(Config config) {
+        return (long) (config.turnTimeoutMillis * timeoutFactor);
+    }
+
+    long pointFreezeMillis(Config config) {
+        return (long) (config.pointFreezeMillis * pointFactor);
+    }
+
+    long penaltyFreezeMillis(Config config) {
+        return (long) (config.penaltyFreezeMillis * penaltyFactor);
+    }
+
+    /**
+     * @return - the number of cards to deal (more are dealt if they have no set).
+     */
+    int dealtCards() {
+        return dealtCards;
+    }
+}
@@ -0,0 +1,299 @@
+package bguspl.set.ex;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An embedded HTTP endpoint to inspect and control the running games, served on the loopback interface only:
+ * GET  /metrics                   - the metrics of all games in the Prometheus text format.
+ * GET  /games                     - the state of all games, in JSON.
+ * GET  /games/{name}              - the state of a game, in JSON.
+ * POST /games/{name}/pause        - pauses a game (the clock stops and the key presses are ignored).
+ * POST /games/{name}/resume       - resumes a paused game.
+ * POST /games/{name}/terminate    - terminates a game, as closing its window does.
+ *
+ * The requests are handled on a small executor of daemon threads of their own. They read only the statuses the
+ * dealers publish (see Dealer.status) and the admin actions only set flags, so a request never locks the game.
+ */
+public class AdminServer implements AutoCloseable {
+
+    /**
+     * The number of threads handling the requests.
+     */
+    private static final int THREADS = 2;
+
+    private final Logger logger;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * The registered games by name.
+     */
+    private final Map<String, Dealer> games = new ConcurrentSkipListMap<>();
+
+    /**
+     * Starts serving on a port of the loopback interface.
+     *
+     * @param logger - the game logger.
+     * @param port   - the port (0 for any free port).
+     * @throws IOException - if the port cannot be bound.
+     */
+    public AdminServer(Logger logger, int port) throws IOException {
+        this.logger = logger;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "admin-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/games", this::games);
+        server.start();
+        logger.log(Level.INFO, "admin endpoint listening on http://localhost:" + port());
+    }
+
+    /**
+     * @return - the port the endpoint listens on.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Makes a game visible to the endpoint (replacing a game of the same name).
+     *
+     * @param name   - the name of the game in the URLs and the metric labels.
+     * @param dealer - the dealer of the game.
+     */
+    public void register(String name, Dealer dealer) {
+        games.put(name, dealer);
+    }
+
+    /**
+     * Removes a game from the endpoint.
+     *
+     * @param name - the name of the game.
+     */
+    public void unregister(String name) {
+        games.remove(name);
+    }
+
+    /**
+     * Stops serving. The requests being handled are abandoned.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "text/plain", "method not allowed\n");
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        family(out, "set_game_paused", "gauge", "1 iff the game is paused.");
+        family(out, "set_game_finished", "gauge", "1 iff the game ended.");
+        family(out, "set_game_status_timestamp_seconds", "gauge", "The time the dealer last published the state of the game.");
+        family(out, "set_game_claims_total", "counter", "The set claims checked by the dealer.");
+        family(out, "set_game_reshuffles_total", "counter", "The times the cards were returned to the deck.");
+        family(out, "set_game_deck_cards", "gauge", "The cards left in the deck.");
+        family(out, "set_game_table_cards", "gauge", "The cards on the table.");
+        family(out, "set_game_table_sets", "gauge", "The legal sets among the cards on the table.");
+        family(out, "set_game_timer_seconds", "gauge", "The countdown (HIGH level) or the time since the last set (MEDIUM level).");
+        family(out, "set_game_sets_claimed_total", "counter", "The sets claimed by the players.");
+        family(out, "set_game_sets_missed_total", "counter", "The sets removed from the table without a claim.");
+        family(out, "set_game_set_claimed_median_seconds", "gauge", "The median time the claimed sets were on the table.");
+        family(out, "set_player_score", "gauge", "The score of a player in the game.");
+        family(out, "set_player_games_total", "counter", "The games of a player across games.");
+        family(out, "set_player_wins_total", "counter", "The wins of a player across games.");
+        family(out, "set_player_sets_total", "counter", "The sets of a player across games.");
+        family(out, "set_player_penalties_total", "counter", "The penalties of a player across games.");
+        for (Map.Entry<String, Dealer> game : games.entrySet()) {
+            GameStatus status = game.getValue().status();
+            if (status == null)
+                continue;
+            String labels = "game=\"" + label(game.getKey()) + "\"";
+            sample(out, "set_game_paused", labels, status.paused ? 1 : 0);
+            sample(out, "set_game_finished", labels, status.finished ? 1 : 0);
+            sample(out, "set_game_status_timestamp_seconds", labels, status.publishedMillis / 1000.0);
+            sample(out, "set_game_claims_total", labels, status.claims);
+            sample(out, "set_game_reshuffles_total", labels, status.reshuffles);
+            sample(out, "set_game_deck_cards", labels, status.deckCards);
+            sample(out, "set_game_table_cards", labels, status.tableCards());
+            sample(out, "set_game_table_sets", labels, status.setsOnTable);
+            sample(out, "set_game_timer_seconds", labels, status.timerMillis / 1000.0);
+            if (status.claimedSets >= 0) {
+                sample(out, "set_game_sets_claimed_total", labels, status.claimedSets);
+                sample(out, "set_game_sets_missed_total", labels, status.missedSets);
+                sample(out, "set_game_set_claimed_median_seconds", labels, status.claimedMedianMillis / 1000.0);
+            }
+            for (int player = 0; player < status.scores.length; player++) {
+                String playerLabels = labels + ",player=\"" + label(status.playerNames[player]) + "\"";
+                sample(out, "set_player_score", playerLabels, status.scores[player]);
+                StatsStore.PlayerStats stats = status.stats[player];
+                if (stats != null) {
+                    sample(out, "set_player_games_total", playerLabels, stats.games);
+                    sample(out, "set_player_wins_total", playerLabels, stats.wins);
+                    sample(out, "set_player_sets_total", playerLabels, stats.sets);
+                    sample(out, "set_player_penalties_total", playerLabels, stats.penalties);
+                }
+            }
+        }
+        respond(exchange, 200, "text/plain; version=0.0.4", out.toString());
+    }
+
+    private void games(HttpExchange exchange) throws IOException {
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+        String method = exchange.getRequestMethod();
+        if (path.length == 1) {
+            if (!"GET".equals(method)) {
+                respond(exchange, 405, "text/plain", "method not allowed\n");
+                return;
+            }
+            StringBuilder out = new StringBuilder("{");
+            String separator = "";
+            for (Map.Entry<String, Dealer> game : games.entrySet()) {
+                out.append(separator);
+                string(out, game.getKey()).append(':');
+                json(out, game.getValue().status());
+                separator = ",";
+            }
+            respond(exchange, 200, "application/json", out.append("}\n").toString());
+            return;
+        }
+
+        Dealer dealer = path.length <= 3 ? games.get(path[1]) : null;
+        if (dealer == null) {
+            respond(exchange, 404, "text/plain", "no such game\n");
+        } else if (path.length == 2) {
+            if ("GET".equals(method))
+                respond(exchange, 200, "application/json", json(new StringBuilder(), dealer.status()).append('\n').toString());
+            else
+                respond(exchange, 405, "text/plain", "method not allowed\n");
+        } else if (!"POST".equals(method)) {
+            respond(exchange, 405, "text/plain", "method not allowed\n");
+        } else if ("pause".equals(path[2]) || "resume".equals(path[2])) {
+            dealer.pause("pause".equals(path[2]));
+            logger.log(Level.INFO, "admin: " + path[2] + " game " + path[1]);
+            respond(exchange, 202, "text/plain", path[2] + " requested\n");
+        } else if ("terminate".equals(path[2])) {
+            dealer.terminate();
+            logger.log(Level.INFO, "admin: terminate game " + path[1]);
+            respond(exchange, 202, "text/plain", "terminate requested\n");
+        } else {
+            respond(exchange, 404, "text/plain", "no such action\n");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    private static void family(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            out.append((long) value);
+        else
+            out.append(String.format(Locale.ROOT, "%.3f", value));
+        out.append('\n');
+    }
+
+    /**
+     * Escapes a Prometheus label value.
+     */
+    private static String label(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Writes a status as a JSON object (null if the game did not publish one yet).
+     */
+    private static StringBuilder json(StringBuilder out, GameStatus status) {
+        if (status == null)
+            return out.append("null");
+        out.append("{\"publishedMillis\":").append(status.publishedMillis);
+        out.append(",\"level\":");
+        string(out, status.level);
+        out.append(",\"paused\":").append(status.paused);
+        out.append(",\"finished\":").append(status.finished);
+        out.append(",\"timerMillis\":").append(status.timerMillis);
+        out.append(",\"deckCards\":").append(status.deckCards);
+        out.append(",\"table\":");
+        array(out, status.slotToCard);
+        out.append(",\"setsOnTable\":").append(status.setsOnTable);
+        out.append(",\"claims\":").append(status.claims);
+        out.append(",\"reshuffles\":").append(status.reshuffles);
+        out.append(",\"winners\":");
+        array(out, status.winners);
+        if (status.claimedSets >= 0) {
+            out.append(",\"sets\":{\"claimed\":").append(status.claimedSets);
+            out.append(",\"missed\":").append(status.missedSets);
+            out.append(",\"claimedMedianMillis\":").append(status.claimedMedianMillis);
+            out.append(",\"missedMedianMillis\":").append(status.missedMedianMillis).append('}');
+        }
+        out.append(",\"players\":[");
+        for (int player = 0; player < status.scores.length; player++) {
+            if (player > 0)
+                out.append(',');
+            out.append("{\"id\":").append(player).append(",\"name\":");
+            string(out, status.playerNames[player]);
+            out.append(",\"score\":").append(status.scores[player]).append(",\"tokens\":");
+            array(out, status.tokens[player]);
+            StatsStore.PlayerStats stats = status.stats[player];
+            if (stats != null)
+                out.append(",\"stats\":{\"games\":").append(stats.games).append(",\"wins\":").append(stats.wins)
+                        .append(",\"sets\":").append(stats.sets).append(",\"penalties\":").append(stats.penalties)
+                        .append(",\"averageSetMillis\":").append(stats.averageSetMillis()).append('}');
+            out.append('}');
+        }
+        return out.append("]}");
+    }
+
+    private static void array(StringBuilder out, int[] values) {
+        out.append('[');
+        for (int i = 0; i < values.length; i++)
+            out.append(i > 0 ? "," : "").append(values[i]);
+        out.append(']');
+    }
+
+    private static StringBuilder string(StringBuilder out, String value) {
+        out.append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if (c < 0x20)
+                out.append(String.format("\\u%04x", (int) c));
+            else
+                out.append(c);
+        }
+        return out.append('"');
+    }
+}
@@ -1,16 +1,23 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.SharedResources;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import javax.xml.transform.Templates;
-
 /**
  * This class manages the dealer's threads and data
  */
@@ -29,8 +36,11 @@ public class Dealer implements Runnable {
 
     /**
      * The list of card ids that are left in the dealer's deck.
+     * Owned by the dealer thread: no other thread reads or changes it once the game started (a collected set only
+     * raises setCollected), so it is never locked, and returning the cards of the table to it does not hold
+     * lockSlotsCards (see removeAllCardsFromTable).
      */
-    private final List<Integer> deck;
+    private List<Integer> deck;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -45,22 +55,83 @@ public class Dealer implements Runnable {
     /**
      * check if there are no more sets available
      */
-    boolean shouldFinish = false;
+    volatile boolean shouldFinish = false;
 
     /**
-     * queue of isSet calls
+     * True iff a player collected a set since the dealer last checked whether the game should finish.
+     * The check runs in the dealer thread, the only one reading the deck.
      */
-    private Queue<Integer> isSetQueue;
+    private volatile boolean setCollected;
 
     /**
-     * level of difficulty
+     * The number of set claims checked by the dealer.
      */
-    private Level level;
+    private final AtomicInteger claims = new AtomicInteger();
+
+    /**
+     * The number of times the cards were returned to the deck before the game ended.
+     */
+    private volatile int reshuffles;
+
+    /**
+     * The time of the next periodic snapshot of the game state.
+     */
+    private long nextSnapshotTime;
+
+    /**
+     * The thread that writes the snapshots, so the dealer only pays for copying the game state.
+     */
+    private ExecutorService snapshotWriter;
+
+    /**
+     * The statistics of the players across games (null if disabled).
+     */
+    private final StatsStore stats;
+
+    /**
+     * The difficulty adapted to the players between rounds (null if disabled).
+     */
+    private final AdaptiveDifficulty difficulty;
+
+    /**
+     * The time a card was last placed on the table, which starts the search for a set.
+     */
+    private volatile long tableChangedMillis;
+
+    /**
+     * True iff the game is paused by the admin: the clock stops and the key presses are ignored.
+     */
+    private volatile boolean paused;
+
+    /**
+     * The lock the dealer and the computer players wait on while the game is paused.
+     */
+    private final Object pauseLock = new Object();
 
     /**
-     * isSet queue lock
+     * The latest state published for the admin endpoint (null if it is disabled or nothing was published yet).
      */
-    private Object isSetQueueLock = new Object();
+    private volatile GameStatus status;
+
+    /**
+     * True iff the game was restored from a snapshot and the first deal should be skipped.
+     */
+    private boolean resumed;
+
+    /**
+     * The timer value saved in the snapshot the game was restored from.
+     */
+    private long resumedTimerMillis;
+
+    /**
+     * The ids of the winners (empty until the game ends).
+     */
+    private volatile int[] winners = new int[0];
+
+    /**
+     * level of difficulty
+     */
+    private Level level;
 
     /**
      * represents the number of milliseconds in a second
@@ -86,6 +157,15 @@ public class Dealer implements Runnable {
         HIGH
     }
 
+    /**
+     * The result of a set claim ENUM
+     */
+    enum ClaimResult {
+        SET,
+        NOT_SET,
+        STALE
+    }
+
     /**
      * Creates a new dealer object.
      *
@@ -97,8 +177,7 @@ public class Dealer implements Runnable {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        isSetQueue = new LinkedList<Integer>();
+        deck = SharedResources.of(env.config).deck();
 
         if (env.config.turnTimeoutMillis < 0) {
             level = Level.EASY;
@@ -107,7 +186,24 @@ public class Dealer implements Runnable {
         } else {
             level = Level.HIGH;
         }
+        stats = openStats();
+        difficulty = env.config.adaptiveDifficulty ? new AdaptiveDifficulty(env.config) : null;
+    }
 
+    /**
+     * Opens the player statistics store, if it is enabled.
+     *
+     * @return the store, or null if it is disabled or cannot be opened.
+     */
+    private StatsStore openStats() {
+        if (env.config.statsFile.isEmpty())
+            return null;
+        try {
+            return StatsStore.open(Paths.get(env.config.statsFile), env.logger);
+        } catch (IOException e) {
+            env.logger.log(java.util.logging.Level.WARNING, "cannot open the player statistics " + env.config.statsFile + ": " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -115,20 +211,72 @@ public class Dealer implements Runnable {
      */
     @Override
     public void run() {
-        System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        env.clock.attach(Thread.currentThread());
+        env.ui.ready().join(); // the card images are loaded in the background while the game is created
         startPlayersThreads();
+        nextSnapshotTime = env.clock.millis() + env.config.snapshotIntervalMillis;
         while (!shouldFinish()) {
-            Collections.shuffle(deck);
-            placeCardsOnTable();
-            ClockReset();
+            if (resumed) {
+                resumeClock();
+                resumed = false;
+            } else {
+                Collections.shuffle(deck);
+                placeCardsOnTable();
+                ClockReset();
+            }
             timerLoop();
             updateTimerDisplay();
+            if (terminate)
+                break; // the table is saved as it is once the players stopped
+            if (!shouldFinish) {
+                reshuffles++;
+                if (table.tracker != null)
+                    table.tracker.reshuffled();
+                if (difficulty != null)
+                    env.logger.log(java.util.logging.Level.INFO, "difficulty adapted: " + difficulty.adapt(env.config));
+            }
             removeAllCardsFromTable();
             shouldFinish = false;
         }
-        announceWinners();
+        boolean interrupted = terminate;
         terminate();
-        System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
+        // the players get half of the timeout, the rest is kept for writing the files even if a player overran
+        Shutdown shutdown = new Shutdown(env.logger, env.config.shutdownTimeoutMillis / 2);
+        for (Player player : players)
+            shutdown.await(player.playerThread).await(player.aiThread());
+        shutdown.join();
+        Shutdown saving = new Shutdown(env.logger, env.config.shutdownTimeoutMillis - (long) shutdown.elapsedMillis());
+
+        if (interrupted)
+            saveSnapshot(); // the window is closing, the cards stay on the table
+        else
+            deleteSnapshot();
+        announceWinners();
+        recordGame(interrupted);
+        publishStatus(true);
+        if (table.tracker != null)
+            env.logger.log(java.util.logging.Level.INFO, "set availability:" + System.lineSeparator() + table.tracker.report(env.config.playerNames));
+        if (snapshotWriter != null)
+            saving.step("snapshots", this::drainSnapshotWriter);
+        if (stats != null)
+            saving.step("stats", stats::close);
+        saving.join();
+        if (interrupted && snapshotWriter != null && snapshotWriter.isTerminated())
+            env.logger.log(java.util.logging.Level.INFO, "game state saved to " + env.config.snapshotFile);
+        env.logger.log(java.util.logging.Level.INFO, String.format("shutdown took %.1f ms", shutdown.elapsedMillis()));
+        env.clock.detach(Thread.currentThread());
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Writes the snapshots that are still queued and stops the writer thread.
+     */
+    private void drainSnapshotWriter() {
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(env.config.shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {}
     }
 
     /**
@@ -138,41 +286,107 @@ public class Dealer implements Runnable {
     private void timerLoop() {
         boolean extraArgument = true;
         while (!terminate && extraArgument && !shouldFinish) {
+            if (paused) {
+                holdWhilePaused();
+                continue;
+            }
+            if (setCollected) {
+                setCollected = false;
+                shouldFinish = shouldFinish();
+                continue; // the loop ends if no set is left, the empty slots are filled otherwise
+            }
             placeCardsOnTable();
-            boolean warning = System.currentTimeMillis() >= reshuffleTime - env.config.turnTimeoutWarningMillis;
+            if (env.clock.millis() >= nextSnapshotTime) {
+                saveSnapshot();
+                nextSnapshotTime = env.clock.millis() + env.config.snapshotIntervalMillis;
+            }
+            boolean warning = env.clock.millis() >= reshuffleTime - env.config.turnTimeoutWarningMillis;
             updateTimerDisplay();
+            publishStatus(false);
             sleepUntilWokenOrTimeout(warning);
 
             // enum switch
             switch (level) {
                 case EASY:
-                    extraArgument = table.isSetOnTable();
+                    extraArgument = table.isSetOnTable() || canFillTable();
                     break;
                 case MEDIUM:
-                    extraArgument = table.isSetOnTable();
+                    extraArgument = table.isSetOnTable() || canFillTable();
                     break;
                 case HIGH:
-                    extraArgument = System.currentTimeMillis() < reshuffleTime;
+                    extraArgument = env.clock.millis() < reshuffleTime;
                     break;
             }
         }
     }
 
     /**
-     * Called when the game should be terminated due to an external event.
+     * Called when the game should be terminated due to an external event. Does not block: all the players are asked
+     * to stop at once, and the dealer thread waits for them (up to half of ShutdownTimeoutSeconds) before it saves the
+     * game in the rest of the time.
      */
     public void terminate() {
-        for (int i = players.length - 1; i >= ZERO; i--) {
-            players[i].terminate();
-            players[i].keyLockOff();
-            try {
-                players[i].playerThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        terminate = true;
+        for (Player player : players)
+            player.terminate();
+        synchronized (pauseLock) {
+            pauseLock.notifyAll();
         }
+        synchronized (this) {
+            env.clock.signalAll(this);
+        }
+    }
 
-        terminate = true;
+    /**
+     * Pauses or resumes the game. Does not block: the dealer stops the clock and the players at its next wake up.
+     *
+     * @param paused true to pause the game, false to resume it.
+     */
+    public void pause(boolean paused) {
+        synchronized (pauseLock) {
+            this.paused = paused;
+            pauseLock.notifyAll();
+        }
+        synchronized (this) {
+            env.clock.signalAll(this);
+        }
+    }
+
+    /**
+     * @return true iff the game is paused.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Blocks while the game is paused (returns at once otherwise, or when the game terminates).
+     *
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    void awaitResumed() throws InterruptedException {
+        if (!paused)
+            return; // the computer players call this in their loops, they do not lock while the game runs
+        synchronized (pauseLock) {
+            while (paused && !terminate)
+                pauseLock.wait();
+        }
+    }
+
+    /**
+     * Keeps the players off the table until the game is resumed, and moves the reshuffle time by the length of the
+     * pause so the clock continues from where it stopped.
+     */
+    private void holdWhilePaused() {
+        toggleLockOn();
+        publishStatus(false);
+        long start = env.clock.millis();
+        try {
+            awaitResumed();
+        } catch (InterruptedException ignored) {}
+        if (level != Level.EASY)
+            reshuffleTime += env.clock.millis() - start;
+        toggleLockOff();
     }
 
     /**
@@ -192,15 +406,126 @@ public class Dealer implements Runnable {
         List<Integer> tableSlots = IntStream.rangeClosed(ZERO, env.config.tableSize - 1).boxed()
                 .collect(Collectors.toList());
         Collections.shuffle(tableSlots);
+        long version = table.cardsVersion();
+        int dealt = difficulty == null ? env.config.tableSize : difficulty.dealtCards();
+        dealCards(tableSlots, dealt - table.countCards());
+        // the adapted number of cards is not enough when they have no set: fill the table
+        if (canFillTable() && !table.isSetOnTable())
+            dealCards(tableSlots, env.config.tableSize - table.countCards());
+        toggleLockOff();
+        if (env.config.hints && table.cardsVersion() != version)
+            table.hints();
+    }
+
+    /**
+     * Places cards from the deck on empty slots.
+     *
+     * @param tableSlots the slots of the table, in the order they are filled.
+     * @param count      the number of cards to place (at most).
+     */
+    private void dealCards(List<Integer> tableSlots, int count) {
+        if (count <= ZERO)
+            return;
+        if (level != Level.HIGH)
+            arrangeSolvableDeal(count);
         for (int i : tableSlots) {
-            if (table.slotToCard[i] == null) {
-                if (deck.size() != ZERO) {
-                    table.placeCard(deck.get(ZERO), i);
-                    deck.remove(ZERO);
-                }
+            if (count > ZERO && table.slotToCard[i] == null && deck.size() != ZERO) {
+                table.placeCard(deck.get(ZERO), i);
+                deck.remove(ZERO);
+                count--;
+                tableChangedMillis = env.clock.millis();
             }
         }
-        toggleLockOff();
+    }
+
+    /**
+     * Check if there are empty slots that the next placeCardsOnTable will fill (e.g. right after a set was collected),
+     * in which case a table without a set is not a reason to reshuffle yet.
+     *
+     * @return true iff the table has an empty slot and the deck is not empty.
+     */
+    private boolean canFillTable() {
+        return !deck.isEmpty() && table.countCards() < env.config.tableSize;
+    }
+
+    /**
+     * Moves cards to the front of the deck so that dealing the next cards leaves a legal set on the table, whenever
+     * the cards on the table and in the deck still contain a set that fits in the empty slots.
+     * Used in the modes without a countdown, where a table without a set forces a reshuffle.
+     * Relies on the completion lookup of the set rule, so rules without a unique completion keep the shuffled order.
+     *
+     * @param emptySlots the number of empty slots that are about to be filled.
+     */
+    private void arrangeSolvableDeal(int emptySlots) {
+        int dealt = Math.min(emptySlots, deck.size());
+        if (dealt == ZERO)
+            return;
+
+        List<Integer> cards = Arrays.stream(table.slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        int onTable = cards.size();
+
+        // the next cards of the deck already complete a set
+        cards.addAll(deck.subList(ZERO, dealt));
+        if (findDealableSet(cards.stream().mapToInt(Integer::intValue).toArray(), cards.size(), ZERO) != null)
+            return;
+
+        // look for a set that needs at most dealt cards from the deck and move them to the front
+        cards.addAll(deck.subList(dealt, deck.size()));
+        int[] set = findDealableSet(cards.stream().mapToInt(Integer::intValue).toArray(), onTable, dealt);
+        if (set == null)
+            return;
+
+        // the new order is built aside and swapped in, so the deck is never seen half reordered
+        boolean[] front = new boolean[env.config.deckSize];
+        for (int card : set)
+            front[card] = true;
+        List<Integer> arranged = new ArrayList<>(deck.size());
+        for (int card : deck)
+            if (front[card])
+                arranged.add(card);
+        for (int card : deck)
+            if (!front[card])
+                arranged.add(card);
+        deck = arranged;
+    }
+
+    /**
+     * Finds a legal set among the given cards using the completion lookup of the set rule.
+     *
+     * @param cards  the candidate cards: the free cards first, followed by the cards that cost one dealt card each.
+     * @param free   the number of free cards at the beginning of cards.
+     * @param budget the maximal number of cards that cost a dealt card in the set.
+     * @return the cards of the set, or null if there is none within the budget.
+     */
+    private int[] findDealableSet(int[] cards, int free, int budget) {
+        int[] position = new int[env.config.deckSize];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < cards.length; i++)
+            position[cards[i]] = i;
+        return findDealableSet(cards, free, budget, position, new int[env.util.setRule().size() - 1], ZERO, ZERO, ZERO);
+    }
+
+    private int[] findDealableSet(int[] cards, int free, int budget, int[] position, int[] chosen, int depth,
+                                  int start, int spent) {
+        if (depth == chosen.length) {
+            int card = env.util.setRule().complete(chosen);
+            if (card < ZERO || position[card] < ZERO || spent + (position[card] >= free ? 1 : ZERO) > budget)
+                return null;
+            int[] set = Arrays.copyOf(chosen, chosen.length + 1);
+            set[chosen.length] = card;
+            return set;
+        }
+
+        for (int i = start; i < cards.length; i++) {
+            int cost = i >= free ? 1 : ZERO;
+            if (spent + cost > budget)
+                break; // all the following cards cost a dealt card as well
+            chosen[depth] = cards[i];
+            int[] set = findDealableSet(cards, free, budget, position, chosen, depth + 1, i + 1, spent + cost);
+            if (set != null)
+                return set;
+        }
+        return null;
     }
 
     /**
@@ -210,7 +535,7 @@ public class Dealer implements Runnable {
     private void sleepUntilWokenOrTimeout(boolean warning) {
         long sleepTime = warning ? TEN_MILL : SECOND/TEN_MILL;
         try {
-            synchronized(this){wait(sleepTime);}
+            synchronized(this){env.clock.await(this, sleepTime);}
         } catch (InterruptedException ignore) {}
     }
 
@@ -222,12 +547,12 @@ public class Dealer implements Runnable {
             case EASY:
                 break;
             case MEDIUM:
-                env.ui.setElapsed(System.currentTimeMillis() - reshuffleTime);
+                env.ui.setElapsed(env.clock.millis() - reshuffleTime);
                 break;
             case HIGH:
-                long millisTillTimeout = Math.max(reshuffleTime - System.currentTimeMillis(), 0);
+                long millisTillTimeout = Math.max(reshuffleTime - env.clock.millis(), 0);
                 
-                boolean warning = System.currentTimeMillis() >= reshuffleTime - env.config.turnTimeoutWarningMillis;
+                boolean warning = env.clock.millis() >= reshuffleTime - env.config.turnTimeoutWarningMillis;
 
                 env.ui.setCountdown(millisTillTimeout, warning);
                 break;
@@ -239,14 +564,14 @@ public class Dealer implements Runnable {
      */
     private void removeAllCardsFromTable() {
         toggleLockOn();
+        // the table is not locked around the removals, they sleep the table delay
         for (int i = 0; i < env.config.tableSize; i++) {
-            synchronized(table.lockSlotsCards){
             if (table.slotToCard[i] != null) {
-                deck.add(table.slotToCard[i]);
-                table.removeCard(i);
+                Integer card = table.removeCard(i);
+                if (card != null)
+                    deck.add(card);
             }
         }
-    }
         for (Player player : players) {
             table.removeAllTokens(player.id);
         }
@@ -256,42 +581,32 @@ public class Dealer implements Runnable {
      * Check who is/are the winner/s and displays them.
      */
     private void announceWinners() {
-        int maxScore = ZERO;
-        int maxSum = ZERO;
-        int sumScore = ZERO;
-
-        for (Player player : players) {
-            sumScore += player.score();
-            if (player.score() > maxScore) {
-                maxScore = player.score();
-            }
-        }
-
-        for (Player player : players) {
-            if (player.score() == maxScore) {
-                maxSum++;
-            }
-        }
-
-        int[] winners = new int[maxSum];
-        for (Player player : players) {
-            if (player.score() == maxScore) {
-                winners[maxSum - 1] = player.id;
-                maxSum--;
-            }
-        }
-
-
-        System.out.println(sumScore);
+        int[] winners = table.leaderboard.leaders();
+        this.winners = winners;
         env.ui.announceWinner(winners);
     }
 
+    /**
+     * Records the finished game in the player statistics (a game closed by the user is not counted).
+     *
+     * @param interrupted true iff the game was closed by the user.
+     */
+    private void recordGame(boolean interrupted) {
+        if (stats == null)
+            return;
+        if (!interrupted)
+            for (Player player : players)
+                stats.recordGame(env.config.playerNames[player.id], Arrays.stream(winners).anyMatch(id -> id == player.id));
+    }
+
     /**
      * Start the threads of the players.
      */
     private void startPlayersThreads() {
         for (Player player : players) {
-            new Thread(player, "Player" + player.id).start();
+            player.playerThread = new Thread(player, "Player" + player.id);
+            env.clock.attach(player.playerThread);
+            player.playerThread.start();
         }
     }
 
@@ -303,55 +618,179 @@ public class Dealer implements Runnable {
             case EASY:
                 break;
             case MEDIUM:
-                reshuffleTime = System.currentTimeMillis();
+                reshuffleTime = env.clock.millis();
                 break;
             case HIGH:
-                reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+                reshuffleTime = env.clock.millis() + turnTimeoutMillis();
                 break;
         }
     }
 
     /**
-     * Check if the given cards form a set.
+     * Restores the game state saved in a snapshot. Must be called before the dealer thread starts.
      *
-     * @param cards the cards to check.
-     * @return true iff the cards form a set.
+     * @param snapshot the snapshot (of a game with the same deck size, table size and number of players).
      */
-    synchronized protected boolean isSet(int player) {
-        
-        int[] tempCards = new int[env.config.featureSize];
+    public void restore(GameSnapshot snapshot) {
+        deck.clear();
+        for (int card : snapshot.deck)
+            deck.add(card);
+        for (int slot = 0; slot < snapshot.tableSize; slot++)
+            if (snapshot.slotToCard[slot] >= ZERO)
+                table.placeCard(snapshot.slotToCard[slot], slot);
+        for (int player = 0; player < snapshot.players; player++) {
+            for (int slot : snapshot.tokens[player])
+                table.placeToken(player, slot);
+            players[player].restoreScore(snapshot.scores[player]);
+        }
+        resumedTimerMillis = snapshot.timerMillis;
+        resumed = true;
+    }
 
-        boolean isSet = true;
+    /**
+     * Copies the game state. Runs in the dealer thread, which is the only one changing the deck, and holds the
+     * table lock only while copying the slots and tokens.
+     *
+     * @return a snapshot of the game state.
+     */
+    private GameSnapshot captureSnapshot() {
+        int[] deckCards = deck.stream().mapToInt(Integer::intValue).toArray();
+        int[] slotToCard = new int[env.config.tableSize];
+        int[][] tokens = new int[players.length][];
+        synchronized (table.lockSlotsCards) {
+            for (int slot = 0; slot < slotToCard.length; slot++)
+                slotToCard[slot] = table.slotToCard[slot] == null ? -1 : table.slotToCard[slot];
+            for (int player = 0; player < players.length; player++)
+                tokens[player] = table.tokenSlots(player);
+        }
+        int[] scores = new int[players.length];
+        for (int player = 0; player < players.length; player++)
+            scores[player] = table.leaderboard.score(player);
+
+        long timer = ZERO;
+        if (level == Level.HIGH)
+            timer = Math.max(reshuffleTime - env.clock.millis(), ZERO);
+        else if (level == Level.MEDIUM)
+            timer = env.clock.millis() - reshuffleTime;
+        return new GameSnapshot(env.config.deckSize, timer, deckCards, slotToCard, tokens, scores);
+    }
 
-        if(table.getTokenSize(player)!=env.config.featureSize) return false;
+    /**
+     * Publishes the state of the game for the admin endpoint (if it is enabled). Runs in the dealer thread, so the
+     * readers of the status never lock the game.
+     *
+     * @param finished true iff the game ended.
+     */
+    private void publishStatus(boolean finished) {
+        if (env.config.adminPort < ZERO)
+            return;
+        StatsStore.PlayerStats[] playerStats = new StatsStore.PlayerStats[players.length];
+        if (stats != null)
+            for (int player = 0; player < players.length; player++)
+                playerStats[player] = stats.get(env.config.playerNames[player]);
+        status = new GameStatus(env.clock.millis(), level.name(), paused, finished, captureSnapshot(),
+                table.hintService.current().count(), env.config.playerNames, winners, claims.get(), reshuffles,
+                playerStats, table.tracker);
+    }
 
-        for (int i = 0; i < env.config.featureSize; i++) {
-            tempCards[i] = table.getcardBySlot(table.getTokens(player).get(i));}
-        
-        isSet = table.isAllCardsOnTable(tempCards);
+    /**
+     * @return the latest state published for the admin endpoint, or null if none was published.
+     */
+    public GameStatus status() {
+        return status;
+    }
 
+    /**
+     * Copies the game state and hands it to the snapshot writer thread (if snapshots are enabled). The last snapshot
+     * of a game is written when the writer is drained at the shutdown, within its deadline.
+     */
+    private void saveSnapshot() {
+        if (env.config.snapshotFile.isEmpty())
+            return;
+        GameSnapshot snapshot = captureSnapshot();
+        snapshotWriter().submit(() -> {
+            try {
+                snapshot.write(Paths.get(env.config.snapshotFile));
+            } catch (IOException e) {
+                env.logger.log(java.util.logging.Level.WARNING, "cannot write snapshot " + env.config.snapshotFile + ": " + e);
+            }
+        });
+    }
 
-        if(isSet){isSet= env.util.testSet(tempCards);}
-        if (isSet) {
-            shouldFinish = shouldFinish();
-            table.pointToPlayer(player);
-        }
+    /**
+     * Deletes the snapshot of a game that ended (after the pending snapshots were written).
+     */
+    private void deleteSnapshot() {
+        if (env.config.snapshotFile.isEmpty())
+            return;
+        snapshotWriter().submit(() -> {
+            try {
+                Files.deleteIfExists(Paths.get(env.config.snapshotFile));
+            } catch (IOException e) {
+                env.logger.log(java.util.logging.Level.WARNING, "cannot delete snapshot " + env.config.snapshotFile + ": " + e);
+            }
+        });
+    }
 
-        return isSet;
+    private ExecutorService snapshotWriter() {
+        if (snapshotWriter == null)
+            snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        return snapshotWriter;
     }
 
     /**
-     * synchronized method for isSet tests (fairly)
-     * 
-     * @post next object in the queue can try to check for Set
+     * Resumes the timer saved in the snapshot the game was restored from.
      */
-    protected void unlockIsSet() {
-        synchronized (isSetQueueLock) {
-            // isSetQueue.remove();
-            isSetQueueLock.notifyAll();
+    private void resumeClock() {
+        switch (level) {
+            case EASY:
+                break;
+            case MEDIUM:
+                reshuffleTime = env.clock.millis() - resumedTimerMillis;
+                break;
+            case HIGH:
+                reshuffleTime = env.clock.millis() + resumedTimerMillis;
+                break;
         }
     }
 
+    /**
+     * Check if the tokens of a player form a set, and collect the set if they do.
+     * The claim is validated against the versions of the slots the tokens were placed on, so a claim built on
+     * cards that were replaced is rejected without locking the table. The table is locked only to collect the set.
+     *
+     * @param player the id of the player claiming a set.
+     * @return SET if the set was collected, NOT_SET if the cards do not form a set, STALE if any of the cards
+     *         changed since the player placed the tokens.
+     */
+    protected ClaimResult checkClaim(int player) {
+        int[] slots = table.tokenSlots(player);
+        if (slots.length != env.config.setSize)
+            return ClaimResult.STALE;
+        claims.incrementAndGet();
+
+        int[] versions = table.tokenVersions(player, slots);
+        int[] cards = table.cardsIfCurrent(slots, versions);
+        if (cards == null)
+            return ClaimResult.STALE;
+        if (!env.util.testSet(cards)) {
+            if (difficulty != null)
+                difficulty.claimed(false, ZERO);
+            return ClaimResult.NOT_SET;
+        }
+
+        if (!table.claimSet(player, slots, versions))
+            return ClaimResult.STALE;
+        setCollected = true; // the point freeze wakes the dealer up to check it
+        if (difficulty != null)
+            difficulty.claimed(true, env.clock.millis() - tableChangedMillis);
+        return ClaimResult.SET;
+    }
+
     /**
      * set a freeze to a player
      * lock the player prom place and remove tokens on the table
@@ -361,21 +800,22 @@ public class Dealer implements Runnable {
      */
     public void setFreeze(long millis, Player player) {
         // player.peneltyLock.set(true);
-        synchronized(this){notifyAll();}
-        long freezeTimeOut = System.currentTimeMillis() + millis;
+        synchronized(this){env.clock.signalAll(this);}
+        long freezeTimeOut = env.clock.millis() + millis;
 
-        while (System.currentTimeMillis() <= freezeTimeOut) {
-            env.ui.setFreeze(player.id, freezeTimeOut - System.currentTimeMillis());
+        for (long left = millis; left > ZERO; left = freezeTimeOut - env.clock.millis()) {
+            env.ui.setFreeze(player.id, left);
 
-            long sleepTime = System.currentTimeMillis() < freezeTimeOut
-                    ? Math.min((freezeTimeOut-System.currentTimeMillis() % SECOND),(reshuffleTime - System.currentTimeMillis()) % SECOND)
-                    : 0;
+            // wake up when the displayed second of the freeze changes (a sleep of 0 would spin on a virtual clock)
+            long sleepTime = left % SECOND == ZERO ? SECOND : left % SECOND;
 
             updateTimerDisplay();
             
             try {
-                player.playerThread.sleep(sleepTime);
-            } catch (Exception e) {
+                env.clock.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // the game is terminating, let the player see it
+                break;
             }
         }
 
@@ -405,6 +845,62 @@ public class Dealer implements Runnable {
         }
     }
 
+    /**
+     * @return the number of set claims checked by the dealer so far.
+     */
+    public int claims() {
+        return claims.get();
+    }
+
+    /**
+     * @return the number of times the cards were returned to the deck before the game ended.
+     */
+    public int reshuffles() {
+        return reshuffles;
+    }
+
+    /**
+     * @return the ids of the winners, or an empty array if the game did not end yet.
+     */
+    public int[] winners() {
+        return winners;
+    }
+
+    /**
+     * @return the statistics of the players across games, or null if they are disabled.
+     */
+    public StatsStore stats() {
+        return stats;
+    }
+
+    /**
+     * @return the turn timeout of the current round, adapted to the players if enabled.
+     */
+    public long turnTimeoutMillis() {
+        return difficulty == null ? env.config.turnTimeoutMillis : difficulty.turnTimeoutMillis(env.config);
+    }
+
+    /**
+     * @return the freeze after a point, adapted to the players if enabled.
+     */
+    public long pointFreezeMillis() {
+        return difficulty == null ? env.config.pointFreezeMillis : difficulty.pointFreezeMillis(env.config);
+    }
+
+    /**
+     * @return the freeze after a penalty, adapted to the players if enabled.
+     */
+    public long penaltyFreezeMillis() {
+        return difficulty == null ? env.config.penaltyFreezeMillis : difficulty.penaltyFreezeMillis(env.config);
+    }
+
+    /**
+     * @return the live scores and ranking of the players (safe to read from any thread).
+     */
+    public Leaderboard leaderboard() {
+        return table.leaderboard;
+    }
+
     // test purpuses only
     public long getReshuffleTime() {
         return reshuffleTime;
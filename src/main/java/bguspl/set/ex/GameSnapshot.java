@@ -0,0 +1,196 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable copy of the full game state, used to resume a game after the process stopped.
+ *
+ * The binary format (big endian) is:
+ * magic, version, deck size, table size, players, timer, the deck (count + cards), the card of every slot (-1 if
+ * empty), the tokens of every player (count + slots), the score of every player and a CRC32 of all of the above.
+ *
+ * @inv slotToCard.length == tableSize
+ * @inv tokens.length == scores.length == players
+ */
+public class GameSnapshot {
+
+    /**
+     * The first bytes of every snapshot file ("SETG").
+     */
+    private static final int MAGIC = 0x53455447;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The total number of cards in the deck of the game.
+     */
+    public final int deckSize;
+
+    /**
+     * The number of slots on the table.
+     */
+    public final int tableSize;
+
+    /**
+     * The number of players.
+     */
+    public final int players;
+
+    /**
+     * The time left until the reshuffle (countdown modes) or the time elapsed since the last action (elapsed mode).
+     */
+    public final long timerMillis;
+
+    /**
+     * The cards left in the dealer's deck, in order.
+     */
+    final int[] deck;
+
+    /**
+     * The card in every slot (-1 if none).
+     */
+    final int[] slotToCard;
+
+    /**
+     * The slots of the tokens of every player.
+     */
+    final int[][] tokens;
+
+    /**
+     * The score of every player.
+     */
+    final int[] scores;
+
+    GameSnapshot(int deckSize, long timerMillis, int[] deck, int[] slotToCard, int[][] tokens, int[] scores) {
+        this.deckSize = deckSize;
+        this.tableSize = slotToCard.length;
+        this.players = scores.length;
+        this.timerMillis = timerMillis;
+        this.deck = deck;
+        this.slotToCard = slotToCard;
+        this.tokens = tokens;
+        this.scores = scores;
+    }
+
+    /**
+     * @return the number of bytes of the encoded snapshot.
+     */
+    private int encodedSize() {
+        int ints = 5 + 1 + deck.length + tableSize + players + 1;
+        for (int[] playerTokens : tokens)
+            ints += 1 + playerTokens.length;
+        return ints * Integer.BYTES + Long.BYTES;
+    }
+
+    private void encode(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(deckSize).putInt(tableSize).putInt(players).putLong(timerMillis);
+        buffer.putInt(deck.length);
+        for (int card : deck)
+            buffer.putInt(card);
+        for (int card : slotToCard)
+            buffer.putInt(card);
+        for (int[] playerTokens : tokens) {
+            buffer.putInt(playerTokens.length);
+            for (int slot : playerTokens)
+                buffer.putInt(slot);
+        }
+        for (int score : scores)
+            buffer.putInt(score);
+        buffer.putInt(crc(buffer, start, buffer.position()));
+    }
+
+    private static GameSnapshot decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 6 * Integer.BYTES + Long.BYTES || buffer.getInt() != MAGIC)
+            throw new IOException("not a game snapshot");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("unsupported snapshot version " + version);
+
+        try {
+            int deckSize = buffer.getInt();
+            int tableSize = buffer.getInt();
+            int players = buffer.getInt();
+            long timerMillis = buffer.getLong();
+            int[] deck = readInts(buffer, buffer.getInt(), deckSize);
+            int[] slotToCard = readInts(buffer, tableSize, deckSize);
+            if (players < 0 || players > buffer.remaining() / Integer.BYTES)
+                throw new IOException("corrupted game snapshot"); // checked before the tokens are allocated
+            int[][] tokens = new int[players][];
+            for (int i = 0; i < players; i++)
+                tokens[i] = readInts(buffer, buffer.getInt(), tableSize);
+            int[] scores = readInts(buffer, players, Integer.MAX_VALUE);
+            int crc = crc(buffer, 0, buffer.position());
+            if (buffer.getInt() != crc)
+                throw new IOException("corrupted game snapshot");
+            return new GameSnapshot(deckSize, timerMillis, deck, slotToCard, tokens, scores);
+        } catch (RuntimeException e) {
+            throw new IOException("corrupted game snapshot", e);
+        }
+    }
+
+    /**
+     * Reads count ints that must be in the range [-1, bound).
+     */
+    private static int[] readInts(ByteBuffer buffer, int count, int bound) throws IOException {
+        if (count < 0 || count > buffer.remaining() / Integer.BYTES)
+            throw new IOException("corrupted game snapshot");
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getInt();
+            if (values[i] < -1 || values[i] >= bound)
+                throw new IOException("corrupted game snapshot");
+        }
+        return values;
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        for (int i = from; i < to; i++)
+            crc.update(buffer.get(i));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes the snapshot to a memory mapped temporary file and atomically renames it to the given file, so the
+     * file always holds a complete snapshot.
+     *
+     * @param file - the snapshot file.
+     * @throws IOException - if the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, encodedSize());
+            encode(buffer);
+            buffer.force();
+        }
+        Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a snapshot written by write.
+     *
+     * @param file - the snapshot file.
+     * @return - the snapshot.
+     * @throws IOException - if the file cannot be read or is not a valid snapshot of a supported version.
+     */
+    public static GameSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package bguspl.set.ex;
+
+/**
+ * The state of a running game as published by its dealer for the admin endpoint. Immutable.
+ *
+ * The dealer copies the state in its own thread (see Dealer.publishStatus), so the readers of a status never lock
+ * the table or any other part of the game; a status is at most one iteration of the dealer loop old.
+ */
+public class GameStatus {
+
+    /**
+     * The time the status was published.
+     */
+    public final long publishedMillis;
+
+    /**
+     * The level of the dealer (EASY, MEDIUM or HIGH).
+     */
+    public final String level;
+
+    /**
+     * True iff the game is paused by the admin.
+     */
+    public final boolean paused;
+
+    /**
+     * True iff the game ended (or was terminated).
+     */
+    public final boolean finished;
+
+    /**
+     * The timer of the current round: the countdown in HIGH, the elapsed time in MEDIUM and 0 in EASY.
+     */
+    public final long timerMillis;
+
+    /**
+     * The number of cards left in the deck.
+     */
+    public final int deckCards;
+
+    /**
+     * The card in every slot (-1 if the slot is empty).
+     */
+    public final int[] slotToCard;
+
+    /**
+     * The number of legal sets among the cards on the table.
+     */
+    public final int setsOnTable;
+
+    /**
+     * The names of the players.
+     */
+    public final String[] playerNames;
+
+    /**
+     * The score of every player.
+     */
+    public final int[] scores;
+
+    /**
+     * The slots of the tokens of every player.
+     */
+    public final int[][] tokens;
+
+    /**
+     * The ids of the winners (empty until the game ends).
+     */
+    public final int[] winners;
+
+    /**
+     * The number of set claims checked by the dealer, and of reshuffles.
+     */
+    public final int claims, reshuffles;
+
+    /**
+     * The statistics of every player across games (null entries if disabled or if the player has none).
+     */
+    public final StatsStore.PlayerStats[] stats;
+
+    /**
+     * The number of sets claimed and missed, and the medians of the time they were on the table (-1 if the sets are
+     * not tracked).
+     */
+    public final long claimedSets, missedSets, claimedMedianMillis, missedMedianMillis;
+
+    GameStatus(long publishedMillis, String level, boolean paused, boolean finished, GameSnapshot snapshot,
+               int setsOnTable, String[] playerNames, int[] winners, int claims, int reshuffles,
+               StatsStore.PlayerStats[] stats, SetAvailabilityTracker tracker) {
+        this.publishedMillis = publishedMillis;
+        this.level = level;
+        this.paused = paused;
+        this.finished = finished;
+        timerMillis = snapshot.timerMillis;
+        deckCards = snapshot.deck.length;
+        slotToCard = snapshot.slotToCard;
+        tokens = snapshot.tokens;
+        scores = snapshot.scores;
+        this.setsOnTable = setsOnTable;
+        this.playerNames = playerNames;
+        this.winners = winners;
+        this.claims = claims;
+        this.reshuffles = reshuffles;
+        this.stats = stats;
+        claimedSets = tracker == null ? -1 : tracker.claimed.count();
+        missedSets = tracker == null ? -1 : tracker.missed.count();
+        claimedMedianMillis = tracker == null ? -1 : tracker.claimed.quantileMillis(0.5);
+        missedMedianMillis = tracker == null ? -1 : tracker.missed.quantileMillis(0.5);
+    }
+
+    /**
+     * @return - the number of cards on the table.
+     */
+    public int tableCards() {
+        int cards = 0;
+        for (int card : slotToCard)
+            if (card >= 0)
+                cards++;
+        return cards;
+    }
+}
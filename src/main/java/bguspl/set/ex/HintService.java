@@ -0,0 +1,163 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The legal sets among the cards on the table, enumerated once per change of the table and shared by everyone who
+ * asks (the dealer, the computer players and the console hints).
+ *
+ * The cache is keyed by the version of the table, which changes whenever a card is placed or removed. Readers of a
+ * current cache do not lock; a stale cache is recomputed by a single reader while the others wait for it.
+ */
+public class HintService {
+
+    /**
+     * The sets of one version of the table. Immutable.
+     */
+    public static final class Sets {
+
+        /**
+         * The version of the table the sets were found in.
+         */
+        public final long version;
+
+        private final int setSize;
+
+        /**
+         * The slots of set i are slots[i * setSize .. (i + 1) * setSize - 1], in ascending order.
+         */
+        private final int[] slots;
+
+        /**
+         * The cards of the sets, in the order of their slots.
+         */
+        private final int[] cards;
+
+        /**
+         * Bit s % 64 of members[s / 64] is set iff slot s is part of a set.
+         */
+        private final long[] members;
+
+        private Sets(long version, int setSize, int tableSize, int[] slots, int[] cards) {
+            this.version = version;
+            this.setSize = setSize;
+            this.slots = slots;
+            this.cards = cards;
+            members = new long[(tableSize + Long.SIZE - 1) / Long.SIZE];
+            for (int slot : slots)
+                members[slot / Long.SIZE] |= 1L << slot;
+        }
+
+        /**
+         * @return - the number of sets.
+         */
+        public int count() {
+            return setSize == 0 ? 0 : slots.length / setSize;
+        }
+
+        /**
+         * @return - true iff there is no set.
+         */
+        public boolean isEmpty() {
+            return slots.length == 0;
+        }
+
+        /**
+         * @param set - the index of a set (0 <= set < count()).
+         * @return - the slots of the set, in ascending order.
+         */
+        public int[] slots(int set) {
+            return Arrays.copyOfRange(slots, set * setSize, (set + 1) * setSize);
+        }
+
+        /**
+         * @param set - the index of a set (0 <= set < count()).
+         * @return - the cards of the set, in the order of its slots.
+         */
+        public int[] cards(int set) {
+            return Arrays.copyOfRange(cards, set * setSize, (set + 1) * setSize);
+        }
+
+        /**
+         * @param slot - a slot of the table.
+         * @return - true iff the card in the slot is part of a set.
+         */
+        public boolean isMember(int slot) {
+            return (members[slot / Long.SIZE] >>> slot & 1) != 0;
+        }
+    }
+
+    private final Env env;
+    private final Table table;
+
+    /**
+     * The sets of the latest version of the table computed so far.
+     */
+    private volatile Sets sets;
+
+    /**
+     * @param env   - the game environment.
+     * @param table - the table whose sets are served.
+     */
+    HintService(Env env, Table table) {
+        this.env = env;
+        this.table = table;
+        sets = new Sets(-1, env.config.setSize, table.slotToCard.length, new int[0], new int[0]);
+    }
+
+    /**
+     * @return - the sets of the current table (computed if the table changed since the last call).
+     */
+    public Sets current() {
+        Sets current = sets;
+        if (current.version == table.cardsVersion())
+            return current;
+        synchronized (this) {
+            Integer[] slotToCard;
+            long version;
+            synchronized (table.lockSlotsCards) {
+                version = table.cardsVersion();
+                if (sets.version == version)
+                    return sets;
+                slotToCard = table.slotToCard.clone();
+            }
+            sets = find(version, slotToCard);
+            return sets;
+        }
+    }
+
+    /**
+     * Enumerates the sets of a copy of the table.
+     */
+    private Sets find(long version, Integer[] slotToCard) {
+        List<Integer> cards = new ArrayList<>();
+        int[] cardToSlot = new int[env.config.deckSize];
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            if (slotToCard[slot] != null) {
+                cards.add(slotToCard[slot]);
+                cardToSlot[slotToCard[slot]] = slot;
+            }
+        }
+        List<int[]> found = env.util.findSets(cards, Integer.MAX_VALUE);
+        int setSize = env.config.setSize;
+        int[] slots = new int[found.size() * setSize];
+        int[] setCards = new int[slots.length];
+        int i = 0;
+        for (int[] set : found) { // a linked list: indexing it would be quadratic
+            int[] setSlots = new int[setSize];
+            for (int j = 0; j < setSize; j++)
+                setSlots[j] = cardToSlot[set[j]];
+            Arrays.sort(setSlots);
+            for (int j = 0; j < setSize; j++) {
+                slots[i * setSize + j] = setSlots[j];
+                setCards[i * setSize + j] = slotToCard[setSlots[j]];
+            }
+            i++;
+        }
+        return new Sets(version, setSize, slotToCard.length, slots, setCards);
+    }
+}
@@ -0,0 +1,211 @@
+package bguspl.set.ex;
+
+import bguspl.set.GameClock;
+
+/**
+ * The bounded queue of the key presses of a single player, filled by the input thread (the AWT event dispatch
+ * thread or the computer player's thread) and drained by the player thread.
+ *
+ * Policies:
+ * - a press of a slot that is already waiting in the queue is coalesced into it (so an auto-repeat burst of a
+ *   held key toggles the token once instead of flickering it);
+ * - when the queue is full, offer drops the new press (the presses already waiting are the ones the player made
+ *   first), while put waits until there is room;
+ * - presses are not accepted after the queue is closed.
+ *
+ * The latency of a press is measured from the moment it is queued until the player thread finished handling it.
+ *
+ * @inv 0 <= size <= slots.length
+ * @inv pending >= size
+ */
+public class KeyQueue {
+
+    /**
+     * Returned by take when the queue was closed.
+     */
+    public static final int CLOSED = -1;
+
+    /**
+     * The slots of the queued presses (a circular buffer).
+     */
+    private final int[] slots;
+
+    /**
+     * The time (System.nanoTime) each of the queued presses was queued at.
+     */
+    private final long[] queuedAt;
+
+    /**
+     * The index of the oldest queued press.
+     */
+    private int head;
+
+    /**
+     * The number of queued presses.
+     */
+    private int size;
+
+    /**
+     * The number of presses queued or being handled by the player thread.
+     */
+    private int pending;
+
+    /**
+     * The time the press currently handled by the player thread was queued at.
+     */
+    private long handledQueuedAt;
+
+    /**
+     * True iff the queue no longer accepts presses.
+     */
+    private boolean closed;
+
+    /**
+     * Statistics: presses handled, coalesced and dropped, and the total and maximal latency of the handled ones.
+     */
+    private long handled, coalesced, dropped, totalLatencyNanos, maxLatencyNanos;
+
+    /**
+     * The clock the threads wait for the queue with.
+     */
+    private final GameClock clock;
+
+    /**
+     * @param capacity - the maximal number of presses waiting in the queue.
+     */
+    public KeyQueue(int capacity) {
+        this(capacity, GameClock.SYSTEM);
+    }
+
+    /**
+     * @param capacity - the maximal number of presses waiting in the queue.
+     * @param clock    - the clock of the game.
+     */
+    public KeyQueue(int capacity, GameClock clock) {
+        slots = new int[capacity];
+        queuedAt = new long[capacity];
+        this.clock = clock;
+    }
+
+    /**
+     * Queues a key press without waiting. Used by the event dispatch thread, so it never blocks on game logic.
+     *
+     * @param slot - the slot of the pressed key.
+     * @return - true iff the press was queued or coalesced into a press already in the queue.
+     */
+    public synchronized boolean offer(int slot) {
+        if (closed)
+            return false;
+        if (contains(slot)) {
+            coalesced++;
+            return true;
+        }
+        if (size == slots.length) {
+            dropped++;
+            return false;
+        }
+        enqueue(slot);
+        return true;
+    }
+
+    /**
+     * Queues a key press, waiting while the queue is full.
+     *
+     * @param slot - the slot of the pressed key.
+     * @return - true iff the press was queued or coalesced (false if the queue was closed or the thread interrupted).
+     */
+    public synchronized boolean put(int slot) {
+        try {
+            while (!closed && size == slots.length && !contains(slot))
+                clock.await(this, 0);
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return offer(slot);
+    }
+
+    /**
+     * Takes the oldest press, waiting while the queue is empty. The caller must call done after handling it.
+     *
+     * @return - the slot of the press, or CLOSED if the queue was closed or the thread interrupted.
+     */
+    public synchronized int take() {
+        try {
+            while (!closed && size == 0)
+                clock.await(this, 0);
+        } catch (InterruptedException e) {
+            return CLOSED;
+        }
+        if (size == 0)
+            return CLOSED;
+
+        int slot = slots[head];
+        handledQueuedAt = queuedAt[head];
+        head = (head + 1) % slots.length;
+        size--;
+        clock.signalAll(this);
+        return slot;
+    }
+
+    /**
+     * Called by the player thread when it finished handling the press returned by take.
+     */
+    public synchronized void done() {
+        long latency = System.nanoTime() - handledQueuedAt;
+        handled++;
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        pending--;
+        clock.signalAll(this);
+    }
+
+    /**
+     * Discards all the queued presses (e.g. the presses made while the player's claim was checked).
+     */
+    public synchronized void clear() {
+        dropped += size;
+        pending -= size;
+        size = 0;
+        clock.signalAll(this);
+    }
+
+    /**
+     * Waits until all the queued presses were handled.
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!closed && pending > 0)
+            clock.await(this, 0);
+    }
+
+    /**
+     * Stops accepting presses and wakes up all the waiting threads.
+     */
+    public synchronized void close() {
+        closed = true;
+        clock.signalAll(this);
+    }
+
+    /**
+     * @return - a summary of the handled, coalesced and dropped presses and of their latency.
+     */
+    public synchronized String stats() {
+        return String.format("%d presses handled (average latency %.2f ms, max %.2f ms), %d coalesced, %d dropped",
+                handled, handled == 0 ? 0.0 : totalLatencyNanos / 1e6 / handled, maxLatencyNanos / 1e6, coalesced, dropped);
+    }
+
+    private boolean contains(int slot) {
+        for (int i = 0; i < size; i++)
+            if (slots[(head + i) % slots.length] == slot)
+                return true;
+        return false;
+    }
+
+    private void enqueue(int slot) {
+        int tail = (head + size) % slots.length;
+        slots[tail] = slot;
+        queuedAt[tail] = System.nanoTime();
+        size++;
+        pending++;
+        clock.signalAll(this);
+    }
+}
@@ -0,0 +1,198 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The scores of all the players and their ranking, safe to read from any thread while the game runs.
+ *
+ * Every score is an atomic counter on its own cache lines, so players scoring at the same time do not contend.
+ * The ranking is kept up to date on every change:
+ * - a Fenwick tree counting the players of every score, so the rank of a player costs O(log maxScore);
+ * - a skip list of (score, player) entries ordered best first, so the top k players cost O(log n + k) and are read
+ *   without locking.
+ *
+ * @inv 0 <= score(player) for every player
+ */
+public class Leaderboard {
+
+    /**
+     * The distance (in longs) between the counters of two players: two cache lines, to avoid false sharing
+     * also with the adjacent line prefetcher.
+     */
+    private static final int PADDING = 16;
+
+    /**
+     * The score of player i is scores[i * PADDING].
+     */
+    private final AtomicLongArray scores;
+
+    /**
+     * The number of players.
+     */
+    private final int players;
+
+    /**
+     * A Fenwick tree over the scores: the number of players with score s is counted at index s + 1.
+     */
+    private int[] tree;
+
+    /**
+     * The ranking entries (see entry), best first.
+     */
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>();
+
+    /**
+     * @param players  - the number of players.
+     * @param maxScore - the expected maximal score (the tree grows if it is exceeded).
+     */
+    public Leaderboard(int players, int maxScore) {
+        this.players = players;
+        scores = new AtomicLongArray(players * PADDING);
+        tree = new int[Math.max(maxScore, 1) + 2];
+        for (int player = 0; player < players; player++) {
+            add(0, 1);
+            ranking.add(entry(player, 0));
+        }
+    }
+
+    /**
+     * Orders the entries by descending score, then by ascending player id.
+     */
+    private static long entry(int player, int score) {
+        return ((long) -score << 32) | player;
+    }
+
+    /**
+     * Adds delta to the number of players with the given score.
+     */
+    private void add(int score, int delta) {
+        if (score + 2 > tree.length)
+            grow(score + 2);
+        for (int i = score + 1; i < tree.length; i += i & -i)
+            tree[i] += delta;
+    }
+
+    /**
+     * @return - the number of players with a score of at most the given score.
+     */
+    private int countUpTo(int score) {
+        return prefix(tree, score + 1);
+    }
+
+    /**
+     * Enlarges the tree to the given size (at least doubled). The nodes that already exist keep their values, since
+     * every node covers the same range in any size; the new nodes are computed from the prefix sums.
+     */
+    private void grow(int size) {
+        int[] old = tree;
+        tree = Arrays.copyOf(old, Math.max(size, old.length * 2));
+        for (int i = old.length; i < tree.length; i++)
+            tree[i] = prefix(old, i) - prefix(old, i - (i & -i));
+    }
+
+    /**
+     * @return - the sum of the counts at indices 1..i of a tree.
+     */
+    private static int prefix(int[] tree, int i) {
+        int sum = 0;
+        for (i = Math.min(i, tree.length - 1); i > 0; i -= i & -i)
+            sum += tree[i];
+        return sum;
+    }
+
+    /**
+     * Moves a player from one score to another in the ranking.
+     */
+    private synchronized void rerank(int player, int from, int to) {
+        if (from == to)
+            return;
+        add(from, -1);
+        add(to, 1);
+        // add before remove, so readers never miss the player (topK skips the duplicate)
+        ranking.add(entry(player, to));
+        ranking.remove(entry(player, from));
+    }
+
+    /**
+     * Adds a point to a player.
+     * The points of a player must be added by one thread at a time (in the game, the player's own thread): the
+     * counter is incremented before the ranking is locked, so two concurrent increments of the same player could
+     * move its ranking entry out of order and leave a stale one behind. Different players may score concurrently.
+     *
+     * @param player - the player id.
+     * @return - the new score of the player.
+     */
+    public int increment(int player) {
+        int score = (int) scores.incrementAndGet(player * PADDING);
+        rerank(player, score - 1, score);
+        return score;
+    }
+
+    /**
+     * Sets the score of a player (e.g. when a game is restored from a snapshot).
+     *
+     * @param player - the player id.
+     * @param score  - the new score.
+     */
+    public synchronized void set(int player, int score) {
+        int previous = (int) scores.getAndSet(player * PADDING, score);
+        rerank(player, previous, score);
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the current score of the player.
+     */
+    public int score(int player) {
+        return (int) scores.get(player * PADDING);
+    }
+
+    /**
+     * @return - the number of players.
+     */
+    public int players() {
+        return players;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - 1 + the number of players with a higher score (i.e. tied players share a rank).
+     */
+    public synchronized int rank(int player) {
+        return 1 + players - countUpTo(score(player));
+    }
+
+    /**
+     * @param k - the number of players to return.
+     * @return - the ids of the k best players (or all of them if there are fewer), best first and ties by id.
+     */
+    public int[] topK(int k) {
+        k = Math.min(k, players);
+        int[] top = new int[k];
+        // a player being reranked concurrently has two entries for a moment, sized to k so the cost stays O(k)
+        Set<Integer> seen = new HashSet<>(2 * k);
+        int count = 0;
+        for (Iterator<Long> it = ranking.iterator(); count < k && it.hasNext(); ) {
+            int player = (int) (long) it.next();
+            if (seen.add(player))
+                top[count++] = player;
+        }
+        return count == k ? top : Arrays.copyOf(top, count);
+    }
+
+    /**
+     * @return - the ids of all the players with the highest score, by ascending id.
+     */
+    public synchronized int[] leaders() {
+        if (players == 0)
+            return new int[0];
+        int best = (int) -(ranking.first() >> 32);
+        int count = players - countUpTo(best - 1);
+        return topK(count);
+    }
+}
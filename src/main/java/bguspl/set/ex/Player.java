@@ -1,6 +1,7 @@
 package bguspl.set.ex;
 import bguspl.set.Env;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
 /**
  * This class manages the players' threads and data
@@ -34,22 +35,27 @@ public class Player implements Runnable {
      * The thread of the AI (computer) player (an additional thread used to generate
      * key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
      */
     private final boolean human;
 
+    /**
+     * The strategy the player uses to generate key presses.
+     */
+    public final Strategy strategy;
+
     /**
      * True iff game should be terminated due to an external event.
      */
     private volatile boolean terminate;
 
     /**
-     * The current score of the player.
+     * The time the player started looking for its next set (after the previous set or the start of the game).
      */
-    private int score;
+    private long searchStart;
 
     /**
      * lock for penelty and point state
@@ -71,7 +77,19 @@ public class Player implements Runnable {
      */
     private Dealer dealer;
 
+    /**
+     * The key presses waiting to be handled by the player thread.
+     */
+    private final KeyQueue keys;
 
+    /**
+     * The strategies used to generate the key presses of a player.
+     */
+    public enum Strategy {
+        HUMAN,
+        RANDOM,
+        SMART
+    }
 
     /**
      * The class constructor.
@@ -89,6 +107,24 @@ public class Player implements Runnable {
         this.id = id;
         this.human = human;
         this.dealer = dealer;
+        this.keys = new KeyQueue(env.config.inputQueueCapacity, env.clock);
+        this.strategy = human ? Strategy.HUMAN : computerStrategy(env, id);
+    }
+
+    /**
+     * Returns the strategy configured for a computer player.
+     *
+     * @param env - the environment object.
+     * @param id  - the id of the player.
+     * @return - the configured strategy, or RANDOM if the configured name is unknown.
+     */
+    private static Strategy computerStrategy(Env env, int id) {
+        try {
+            return Strategy.valueOf(env.config.computerStrategy(id));
+        } catch (IllegalArgumentException e) {
+            env.logger.log(Level.WARNING, "unknown strategy " + env.config.computerStrategy(id) + " for player " + id + ", using RANDOM.");
+            return Strategy.RANDOM;
+        }
     }
 
     /**
@@ -97,36 +133,49 @@ public class Player implements Runnable {
     @Override
     public void run() {
         playerThread = Thread.currentThread();
-        System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        searchStart = env.clock.millis();
+        if (table.getTokenSize(id) == env.config.setSize) {
+            // the tokens were restored from a snapshot: no key press completes them, so they are claimed now
+            claim();
+            peneltyLock.set(false);
+            tableLock.set(false);
+        }
         if (!human) createArtificialIntelligence();
         while (!terminate) {
-            while(keyLock.get() == false){
-                try {
-                    Thread.sleep(env.config.tableDelayMillis);
-                } catch (InterruptedException ignored) {}
-            }
-                boolean isSet = false;
-                if (table.getTokenSize(id) == env.config.featureSize){
-                    synchronized(table.lockSlotsCards){
+            int slot = keys.take();
+            if (slot == KeyQueue.CLOSED) continue;
+            keyPressed(slot);
+            if (keyLock.get() && table.getTokenSize(id) == env.config.setSize)
+                claim();
 
-                        tableLock.set(true);
-                        peneltyLock.set(true);
-                        isSet = dealer.isSet(id);
-                    }
-                    if(isSet){
-                        point();
-                    }
-                    else{
-                        penalty();
-                    }  
-                }
-            
-                peneltyLock.set(false);
-                tableLock.set(false);
-                keyLock.set(false);
-            }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
-        System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
+            keys.done();
+            peneltyLock.set(false);
+            tableLock.set(false);
+            keyLock.set(false);
+        }
+        env.logger.info("player " + id + " input: " + keys.stats());
+        env.clock.detach(Thread.currentThread());
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Asks the dealer to check the set of the player's tokens, and awards a point or a penalty. The table stays
+     * locked for the player until the caller releases it.
+     */
+    private void claim() {
+        tableLock.set(true);
+        peneltyLock.set(true);
+        Dealer.ClaimResult result = dealer.checkClaim(id);
+        if (result == Dealer.ClaimResult.SET) {
+            point();
+        } else if (result == Dealer.ClaimResult.NOT_SET) {
+            penalty();
+        } else {
+            // the cards changed under the tokens, it is not the player's fault
+            table.removeStaleTokens(id);
+        }
+        keys.clear(); // presses made while the claim was checked or the player was frozen are ignored
     }
 
     /**
@@ -138,40 +187,93 @@ public class Player implements Runnable {
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
         aiThread = new Thread(() -> {
-            System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
+            env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate) {
+                try {
+                    dealer.awaitResumed();
+                } catch (InterruptedException e) {
+                    continue; // the game is terminating
+                }
                 if(tableLock.get() == false){
-                    int slot = (int) ((Math.random() * (env.config.tableSize)));
-                    keyPressed(slot);
+                    if (strategy == Strategy.SMART)
+                        pressSetSlots();
+                    else {
+                        int slot = (int) ((Math.random() * (env.config.tableSize)));
+                        keys.put(slot);
+                    }
+                } else {
+                    env.clock.idle(); // the table is locked, let the player and the dealer go on
                 }
             }
-            System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
+            env.clock.detach(Thread.currentThread());
+            env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
         }, "computer-" + id);
+        env.clock.attach(aiThread);
         aiThread.start();
     }
 
+    /**
+     * Generates the key presses of the SMART strategy: removes the tokens that are not part of a set on the table
+     * and places tokens on the slots of that set.
+     */
+    private void pressSetSlots() {
+        int[] setSlots = table.findSetSlots();
+        if (setSlots == null) {
+            env.clock.idle(); // wait for the dealer to change the table
+            return;
+        }
+
+        boolean[] inSet = new boolean[env.config.tableSize];
+        for (int slot : setSlots)
+            inSet[slot] = true;
+        for (int slot = 0; slot < env.config.tableSize && !terminate; slot++)
+            if (inSet[slot] != table.isToken(id, slot))
+                keys.put(slot);
+        try {
+            keys.awaitIdle(); // the tokens must reflect these presses before the next comparison
+        } catch (InterruptedException ignored) {}
+    }
+
     /**
      * Called when the game should be terminated due to an external event.
      */
     public void terminate() {
         terminate = true;
+        keys.close();
+        // wakes the threads from freezes, table delays and waits for the queue
+        Thread thread = playerThread, ai = aiThread;
+        if (thread != null && thread != Thread.currentThread())
+            thread.interrupt();
+        if (ai != null && ai != Thread.currentThread())
+            ai.interrupt();
     }
 
     /**
-     * This method is called when a key is pressed.
+     * @return the thread of the AI (null for a human player, or before the player thread started it).
+     */
+    Thread aiThread() {
+        return aiThread;
+    }
+
+    /**
+     * This method is called by the input thread when a key is pressed. It only queues the press for the player
+     * thread, so it never blocks; presses made while the player is frozen are ignored.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     * @return - true iff the press was queued (or coalesced into a queued press of the same key).
+     */
+    public boolean submitKey(int slot) {
+        return !peneltyLock.get() && keys.offer(slot);
+    }
+
+    /**
+     * Handles a key press in the player thread: toggles the player's token on the slot (unless the game is paused).
      *
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        if (peneltyLock.get() == false) {
-            if (table.isToken(id, slot)){
-                table.removeToken(id, slot);
-            } else {
-                if (table.getTokenSize(id) < env.config.featureSize && table.getcardBySlot(slot)!= -1) {
-                    table.placeToken(id, slot);
-                    keyLock.set(true);
-                }
-            }
+        if (peneltyLock.get() == false && !dealer.isPaused() && table.toggleToken(id, slot)) {
+            keyLock.set(true);
         }
     }
 
@@ -182,12 +284,15 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point() {
-        env.ui.setScore(id, ++score);
-        dealer.setFreeze(env.config.pointFreezeMillis, this);
+        env.ui.setScore(id, table.leaderboard.increment(id));
+        StatsStore stats = dealer.stats();
+        if (stats != null)
+            stats.recordSet(env.config.playerNames[id], env.clock.millis() - searchStart);
+        dealer.setFreeze(dealer.pointFreezeMillis(), this);
+        searchStart = env.clock.millis();
         dealer.ClockReset();
 
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
-        dealer.unlockIsSet();
     }
 
     /**
@@ -196,26 +301,27 @@ public class Player implements Runnable {
      * @post - the player's key stroke disable for a while.
      */
     public void penalty() {
-        dealer.unlockIsSet();
-        dealer.setFreeze(env.config.penaltyFreezeMillis, this);
+        StatsStore stats = dealer.stats();
+        if (stats != null)
+            stats.recordPenalty(env.config.playerNames[id]);
+        dealer.setFreeze(dealer.penaltyFreezeMillis(), this);
     }
 
     /**
-     * Returns the current score of the player.
-     * @return - the current score of the player.
+     * Sets the score of the player when a game is restored from a snapshot.
+     * @param score - the saved score.
      */
-    public int score() {
-        return score;
+    void restoreScore(int score) {
+        table.leaderboard.set(id, score);
+        env.ui.setScore(id, score);
     }
 
-
     /**
-     * open the KeyLock of the player
-     * used only when application terminated
-     * @post - the player's lock is open
+     * Returns the current score of the player.
+     * @return - the current score of the player.
      */
-    public void keyLockOff(){
-        keyLock.set(true);
+    public int score() {
+        return table.leaderboard.score(id);
     }
 
 
@@ -0,0 +1,237 @@
+package bguspl.set.ex;
+
+import bguspl.set.GameClock;
+import bguspl.set.SetRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tracks how long the legal sets stay on the table: every set is stamped when its last card is placed, and ends
+ * either when a player claims it (a reaction time of that player) or when one of its cards is removed otherwise
+ * (a set nobody found). Only the sets containing the changed card are examined on every event.
+ *
+ * The table notifies the tracker while it holds its lock, so the cards it reads do not change meanwhile.
+ */
+public class SetAvailabilityTracker {
+
+    /**
+     * A histogram of durations with exponential buckets: bucket b counts the durations in [2^(b-1), 2^b) ms.
+     */
+    public static final class Histogram {
+
+        private final long[] buckets = new long[32];
+        private long count, totalMillis, maxMillis;
+
+        synchronized void record(long millis) {
+            buckets[Math.min(Long.SIZE - Long.numberOfLeadingZeros(Math.max(millis, 0)), buckets.length - 1)]++;
+            count++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        /**
+         * @return - the number of recorded durations.
+         */
+        public synchronized long count() {
+            return count;
+        }
+
+        /**
+         * @param fraction - a fraction between 0 and 1 (e.g. 0.5 for the median).
+         * @return - the upper bound of the bucket holding the given quantile of the durations (0 if empty).
+         */
+        public synchronized long quantileMillis(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            for (int b = 0; b < buckets.length; b++) {
+                rank -= buckets[b];
+                if (rank <= 0 && count > 0)
+                    return Math.min(b == 0 ? 0 : 1L << b, maxMillis);
+            }
+            return maxMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (count == 0)
+                return "none";
+            return String.format("%d, mean %d ms, median <= %d ms, p90 <= %d ms, max %d ms",
+                    count, totalMillis / count, quantileMillis(0.5), quantileMillis(0.9), maxMillis);
+        }
+    }
+
+    /**
+     * A set on the table.
+     */
+    private static final class LiveSet {
+        final int[] cards;
+        final long appearedAt;
+
+        LiveSet(int[] cards, long appearedAt) {
+            this.cards = cards;
+            this.appearedAt = appearedAt;
+        }
+
+        boolean contains(int card) {
+            for (int c : cards)
+                if (c == card) return true;
+            return false;
+        }
+    }
+
+    private final SetRule rule;
+    private final GameClock clock;
+    private final Integer[] slotToCard;
+    private final List<LiveSet> live = new ArrayList<>();
+
+    /**
+     * How long the claimed sets were on the table.
+     */
+    public final Histogram claimed = new Histogram();
+
+    /**
+     * How long the sets nobody claimed were on the table until one of their cards was removed.
+     */
+    public final Histogram missed = new Histogram();
+
+    /**
+     * The reaction time of every player (how long its claimed sets were on the table), created on the first set the
+     * player claims (null before).
+     */
+    private final Histogram[] reactions;
+
+    /**
+     * The reaction times of the players that did not claim a set yet.
+     */
+    private static final Histogram NONE = new Histogram();
+
+    /**
+     * The number of reshuffles, and of the reshuffles of a table that still had a set.
+     */
+    private int reshuffles, reshufflesWithSets;
+
+    /**
+     * @param rule       - the set rule of the game.
+     * @param slotToCard - the cards of the table (read while the table is locked).
+     * @param players    - the number of players.
+     * @param clock      - the clock of the game.
+     */
+    SetAvailabilityTracker(SetRule rule, Integer[] slotToCard, int players, GameClock clock) {
+        this.rule = rule;
+        this.clock = clock;
+        this.slotToCard = slotToCard;
+        reactions = new Histogram[players];
+    }
+
+    /**
+     * Called after a card was placed: stamps the new sets it completes.
+     */
+    synchronized void cardPlaced(int card) {
+        int[] others = Arrays.stream(slotToCard).filter(c -> c != null && c != card).mapToInt(Integer::intValue).toArray();
+        int[] candidate = new int[rule.size()];
+        candidate[0] = card;
+        addSets(others, 0, 1, candidate, clock.millis());
+    }
+
+    /**
+     * Adds the sets made of the candidate's first filled cards and more of the others (from index from on).
+     */
+    private void addSets(int[] others, int from, int filled, int[] candidate, long now) {
+        if (filled == candidate.length - 1) {
+            // the last card is unique, when the rule can tell it
+            int last = rule.complete(Arrays.copyOf(candidate, filled));
+            if (last >= 0) {
+                for (int i = from; i < others.length; i++)
+                    if (others[i] == last)
+                        addSet(candidate, last, now);
+                return;
+            }
+        }
+        if (filled == candidate.length) {
+            if (rule.test(candidate))
+                live.add(new LiveSet(candidate.clone(), now));
+            return;
+        }
+        for (int i = from; i < others.length; i++) {
+            candidate[filled] = others[i];
+            addSets(others, i + 1, filled + 1, candidate, now);
+        }
+    }
+
+    private void addSet(int[] candidate, int last, long now) {
+        int[] cards = candidate.clone();
+        cards[cards.length - 1] = last;
+        live.add(new LiveSet(cards, now));
+    }
+
+    /**
+     * Called when a player collects the set of the given cards, before they are removed.
+     */
+    synchronized void setClaimed(int player, int[] cards) {
+        for (Iterator<LiveSet> it = live.iterator(); it.hasNext(); ) {
+            LiveSet set = it.next();
+            if (set.cards.length == cards.length && Arrays.stream(cards).allMatch(set::contains)) {
+                long millis = clock.millis() - set.appearedAt;
+                claimed.record(millis);
+                if (reactions[player] == null)
+                    reactions[player] = new Histogram();
+                reactions[player].record(millis);
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called when a card is removed: ends the sets containing it.
+     */
+    synchronized void cardRemoved(int card) {
+        long now = clock.millis();
+        for (Iterator<LiveSet> it = live.iterator(); it.hasNext(); ) {
+            LiveSet set = it.next();
+            if (set.contains(card)) {
+                missed.record(now - set.appearedAt);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Called when the dealer returns the cards to the deck before the game ended.
+     */
+    synchronized void reshuffled() {
+        reshuffles++;
+        if (!live.isEmpty())
+            reshufflesWithSets++;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the reaction times of the player.
+     */
+    public synchronized Histogram reactions(int player) {
+        return reactions[player] != null ? reactions[player] : NONE;
+    }
+
+    /**
+     * @return - the number of reshuffles of a table that still had a set.
+     */
+    public synchronized int reshufflesWithSets() {
+        return reshufflesWithSets;
+    }
+
+    /**
+     * @param playerNames - the names of the players.
+     * @return - a summary of the game.
+     */
+    public synchronized String report(String[] playerNames) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("sets claimed: %s%nsets missed: %s%nreshuffles with a set on the table: %d of %d",
+                claimed, missed, reshufflesWithSets, reshuffles));
+        for (int player = 0; player < reactions.length; player++)
+            report.append(String.format("%nreaction time of %s: %s", playerNames[player], reactions(player)));
+        return report.toString();
+    }
+}
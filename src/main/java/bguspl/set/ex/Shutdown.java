@@ -0,0 +1,100 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waits for the threads of a game to stop, against a single deadline.
+ *
+ * The threads are asked to stop by their owners all at once (setting their termination flags and interrupting them)
+ * before they are awaited here, so they stop in parallel and the wait takes as long as the slowest one, not the sum.
+ * The shutdown steps (e.g. flushing files) run in parallel as well, each on its own daemon thread.
+ * A thread or step still running at the deadline is reported with the frame it is stuck in and left behind.
+ */
+public class Shutdown {
+
+    private final Logger logger;
+    private final long startNanos;
+    private final long deadlineNanos;
+
+    /**
+     * The threads and steps not awaited yet.
+     */
+    private final List<Thread> pending = new ArrayList<>();
+
+    /**
+     * @param logger        - the logger the overrunning threads are reported to.
+     * @param timeoutMillis - the time all the threads and steps get to stop, from now.
+     */
+    public Shutdown(Logger logger, long timeoutMillis) {
+        this.logger = logger;
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Adds a thread to wait for (ignored if null).
+     *
+     * @param thread - a thread that was asked to stop.
+     * @return - this shutdown.
+     */
+    public Shutdown await(Thread thread) {
+        if (thread != null)
+            pending.add(thread);
+        return this;
+    }
+
+    /**
+     * Starts a shutdown step, in parallel with the other steps.
+     *
+     * @param name - the name of the step.
+     * @param step - the step.
+     * @return - this shutdown.
+     */
+    public Shutdown step(String name, Runnable step) {
+        Thread thread = new Thread(step, "shutdown-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        pending.add(thread);
+        return this;
+    }
+
+    /**
+     * Waits until the threads and steps added so far stop, or the deadline passes.
+     *
+     * @return - the threads and steps that were still running at the deadline (they are reported once).
+     */
+    public List<Thread> join() {
+        List<Thread> overran = new ArrayList<>();
+        for (Thread thread : pending) {
+            long left = deadlineNanos - System.nanoTime();
+            try {
+                if (left > 0)
+                    TimeUnit.NANOSECONDS.timedJoin(thread, left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // stop waiting, the remaining threads are reported
+            }
+            if (thread.isAlive())
+                overran.add(thread);
+        }
+        pending.clear();
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        for (Thread thread : overran) {
+            StackTraceElement[] stack = thread.getStackTrace();
+            logger.log(Level.WARNING, "thread " + thread.getName() + " did not stop within " + elapsedMillis + " ms"
+                    + (stack.length > 0 ? ", it is at " + stack[0] : ""));
+        }
+        return overran;
+    }
+
+    /**
+     * @return - the time since the shutdown started, in milliseconds.
+     */
+    public double elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+}
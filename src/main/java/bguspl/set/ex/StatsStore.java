@@ -0,0 +1,522 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * The statistics of the players across games, kept by player name.
+ *
+ * The statistics are stored in two files:
+ * - base.log: an append-only log of CRC-checked records, each adding to the statistics of one player. The log
+ *   starts with its generation, which grows whenever the log is compacted (rewritten with one record per player).
+ * - base.idx: the statistics of all the players up to an offset of a generation of the log, so opening the store
+ *   replays only the records after that offset. It is rewritten every few batches and when the store is closed.
+ * A torn record at the end of the log (e.g. after a crash) is dropped when the store is opened.
+ *
+ * The records are written in batches by a background thread; the statistics returned by get already include the
+ * records that were not written yet.
+ *
+ * The games of a process share one store per files (see open), and a lock on base.lock keeps other processes out.
+ */
+public class StatsStore implements AutoCloseable {
+
+    /**
+     * The first bytes of the log ("SETL") and of the index ("SETI").
+     */
+    private static final int LOG_MAGIC = 0x5345544C, INDEX_MAGIC = 0x53455449;
+
+    /**
+     * The size of the log header (magic + generation).
+     */
+    private static final int LOG_HEADER = Integer.BYTES + Long.BYTES;
+
+    /**
+     * The maximal number of records written in one batch.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The number of batches between two index writes.
+     */
+    private static final int INDEX_INTERVAL = 32;
+
+    /**
+     * The log is compacted when it is this many times larger than it was after the last compaction.
+     */
+    private static final int COMPACTION_RATIO = 4;
+
+    /**
+     * The log is never compacted below this size.
+     */
+    private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    /**
+     * The maximal length of a player name in UTF-8 (it is written as an unsigned short).
+     */
+    public static final int MAX_NAME_BYTES = 0xFFFF;
+
+    /**
+     * The statistics of one player.
+     */
+    public static final class PlayerStats {
+
+        public final int games, wins, sets, penalties;
+
+        /**
+         * The total time it took the player to find its sets.
+         */
+        public final long setMillis;
+
+        PlayerStats(int games, int wins, int sets, int penalties, long setMillis) {
+            this.games = games;
+            this.wins = wins;
+            this.sets = sets;
+            this.penalties = penalties;
+            this.setMillis = setMillis;
+        }
+
+        PlayerStats plus(PlayerStats other) {
+            return new PlayerStats(games + other.games, wins + other.wins, sets + other.sets,
+                    penalties + other.penalties, setMillis + other.setMillis);
+        }
+
+        /**
+         * @return - the average time it took the player to find a set (0 if it found none).
+         */
+        public long averageSetMillis() {
+            return sets == 0 ? 0 : setMillis / sets;
+        }
+    }
+
+    /**
+     * A record of the log: statistics to add to a player.
+     */
+    private static final class Delta {
+        final String player;
+        final PlayerStats stats;
+
+        Delta(String player, PlayerStats stats) {
+            this.player = player;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * Tells the writer thread to stop.
+     */
+    private static final Delta CLOSE = new Delta(null, null);
+
+    /**
+     * The stores open in this process, by the absolute path of their files (guarded by itself).
+     */
+    private static final Map<Path, StatsStore> stores = new HashMap<>();
+
+    private final Logger logger;
+    private final Path base, logFile, indexFile;
+
+    /**
+     * Holds the lock of the files for the lifetime of the store.
+     */
+    private final FileChannel lockFile;
+
+    /**
+     * The number of users of the store that did not close it yet (guarded by stores).
+     */
+    private int users;
+
+    /**
+     * The statistics including the records waiting to be written.
+     */
+    private final Map<String, PlayerStats> current = new ConcurrentHashMap<>();
+
+    /**
+     * The statistics as of the end of the log (accessed by the writer thread only, once it started).
+     */
+    private final Map<String, PlayerStats> persisted;
+
+    private final BlockingQueue<Delta> pending = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+
+    private FileChannel log;
+    private long generation;
+    private long compactedSize;
+    private int batchesSinceIndex;
+
+    /**
+     * Opens the store of the given files, or returns the store already open for them in this process (every call
+     * must be matched by a call to close).
+     *
+     * @param base   - the path of the files without their extension.
+     * @param logger - the game logger.
+     * @return - the store.
+     * @throws IOException - if the files cannot be read or created, or are used by another process.
+     */
+    public static StatsStore open(Path base, Logger logger) throws IOException {
+        Path absolute = base.toAbsolutePath().normalize();
+        synchronized (stores) {
+            StatsStore store;
+            // a store without users is being closed, its files are released when it is removed
+            while ((store = stores.get(absolute)) != null && store.users == 0) {
+                try {
+                    stores.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while " + absolute + " was closed");
+                }
+            }
+            if (store == null) {
+                store = new StatsStore(absolute, logger);
+                stores.put(absolute, store);
+            }
+            store.users++;
+            return store;
+        }
+    }
+
+    private StatsStore(Path base, Logger logger) throws IOException {
+        this.logger = logger;
+        this.base = base;
+        logFile = base.resolveSibling(base.getFileName() + ".log");
+        indexFile = base.resolveSibling(base.getFileName() + ".idx");
+        if (base.getParent() != null)
+            Files.createDirectories(base.getParent());
+
+        lockFile = FileChannel.open(base.resolveSibling(base.getFileName() + ".lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        if (lockFile.tryLock() == null) {
+            lockFile.close();
+            throw new IOException(base + " is used by another process");
+        }
+        persisted = new HashMap<>();
+        try {
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            initialize();
+        } catch (IOException | RuntimeException e) {
+            if (log != null)
+                log.close();
+            lockFile.close();
+            throw e;
+        }
+
+        writerThread = new Thread(this::writeLoop, "stats-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Creates the log if it is empty and loads the statistics.
+     */
+    private void initialize() throws IOException {
+        if (log.size() < LOG_HEADER) {
+            generation = 1;
+            log.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER).putInt(LOG_MAGIC).putLong(generation);
+            header.flip();
+            log.write(header, 0);
+        }
+        load();
+        current.putAll(persisted);
+        compactedSize = log.size();
+        log.position(log.size());
+    }
+
+    /**
+     * Loads the index and replays the records written after it, dropping a torn record at the end of the log.
+     */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        log.read(header, 0);
+        header.flip();
+        if (header.getInt() != LOG_MAGIC)
+            throw new IOException(logFile + " is not a statistics log");
+        generation = header.getLong();
+
+        long offset = readIndex();
+        if (offset < 0) {
+            persisted.clear();
+            offset = LOG_HEADER;
+        }
+
+        ByteBuffer records = read(log, offset);
+        int replayed = 0;
+        while (records.remaining() >= 2 * Integer.BYTES) {
+            int start = records.position();
+            int length = records.getInt();
+            int crc = records.getInt();
+            if (length < 0 || length > records.remaining() || crc(records, records.position(), records.position() + length) != crc) {
+                records.position(start);
+                break;
+            }
+            Delta delta = decode(records);
+            persisted.merge(delta.player, delta.stats, PlayerStats::plus);
+            replayed++;
+        }
+        long end = offset + records.position();
+        if (end < log.size()) {
+            logger.log(Level.WARNING, "dropping " + (log.size() - end) + " bytes of a torn record at the end of " + logFile);
+            log.truncate(end);
+        }
+        logger.log(Level.INFO, "loaded the statistics of " + persisted.size() + " players, replayed " + replayed + " records.");
+    }
+
+    /**
+     * Reads the index into persisted.
+     *
+     * @return - the offset of the log the index is up to, or -1 if there is no valid index of the current generation.
+     */
+    private long readIndex() {
+        if (!Files.exists(indexFile))
+            return -1;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = read(channel, 0);
+            if (buffer.remaining() < 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES || buffer.getInt() != INDEX_MAGIC)
+                return -1;
+            int crc = buffer.getInt(buffer.limit() - Integer.BYTES);
+            if (crc(buffer, 0, buffer.limit() - Integer.BYTES) != crc || buffer.getLong() != generation)
+                return -1;
+            long offset = buffer.getLong();
+            if (offset < LOG_HEADER || offset > log.size())
+                return -1;
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                Delta entry = decode(buffer);
+                persisted.put(entry.player, entry.stats);
+            }
+            return offset;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "ignoring the statistics index " + indexFile + ": " + e);
+            persisted.clear();
+            return -1;
+        }
+    }
+
+    /**
+     * Reads a file from an offset to its end.
+     */
+    private static ByteBuffer read(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size() - offset));
+        while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {}
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The main loop of the writer thread.
+     */
+    private void writeLoop() {
+        List<Delta> batch = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                batch.add(CLOSE);
+            }
+            pending.drainTo(batch, BATCH_SIZE - 1);
+            closing = batch.remove(CLOSE);
+            try {
+                if (!batch.isEmpty())
+                    append(batch);
+                if (closing || ++batchesSinceIndex >= INDEX_INTERVAL)
+                    writeIndex();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "cannot write the player statistics: " + e.getMessage());
+            }
+            batch.clear();
+        }
+        try {
+            log.close();
+        } catch (IOException ignored) {}
+        try {
+            lockFile.close(); // releases the lock
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Appends a batch of records to the log with a single write, and compacts the log if it grew too large.
+     */
+    private void append(List<Delta> batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(batch.stream().mapToInt(delta -> recordSize(delta.player)).sum());
+        for (Delta delta : batch) {
+            encodeRecord(buffer, delta.player, delta.stats);
+            persisted.merge(delta.player, delta.stats, PlayerStats::plus);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+            log.write(buffer);
+        log.force(false);
+
+        if (log.size() > Math.max(MIN_COMPACTION_SIZE, COMPACTION_RATIO * compactedSize))
+            compact();
+    }
+
+    /**
+     * Rewrites the log with a single record per player, as the next generation.
+     */
+    private void compact() throws IOException {
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        int size = LOG_HEADER + persisted.keySet().stream().mapToInt(StatsStore::recordSize).sum();
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(LOG_MAGIC).putLong(generation + 1);
+        persisted.forEach((player, stats) -> encodeRecord(buffer, player, stats));
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        log.close();
+        Files.move(temp, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.position(log.size());
+        generation++;
+        compactedSize = log.size();
+        writeIndex();
+        logger.log(Level.INFO, "compacted the statistics log to " + compactedSize + " bytes (generation " + generation + ").");
+    }
+
+    /**
+     * Writes the statistics as of the end of the log to a temporary file and atomically renames it to the index.
+     */
+    private void writeIndex() throws IOException {
+        int size = Integer.BYTES + 2 * Long.BYTES + Integer.BYTES + Integer.BYTES;
+        for (String player : persisted.keySet())
+            size += payloadSize(player);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(INDEX_MAGIC).putLong(generation).putLong(log.size()).putInt(persisted.size());
+        persisted.forEach((player, stats) -> encode(buffer, player, stats));
+        buffer.putInt(crc(buffer, 0, buffer.position()));
+        buffer.flip();
+
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        batchesSinceIndex = 0;
+    }
+
+    private static int payloadSize(String player) {
+        return Short.BYTES + player.getBytes(StandardCharsets.UTF_8).length + 4 * Integer.BYTES + Long.BYTES;
+    }
+
+    private static int recordSize(String player) {
+        return 2 * Integer.BYTES + payloadSize(player);
+    }
+
+    private static void encodeRecord(ByteBuffer buffer, String player, PlayerStats stats) {
+        int start = buffer.position();
+        buffer.position(start + 2 * Integer.BYTES);
+        encode(buffer, player, stats);
+        int end = buffer.position();
+        buffer.putInt(start, end - start - 2 * Integer.BYTES).putInt(start + Integer.BYTES, crc(buffer, start + 2 * Integer.BYTES, end));
+    }
+
+    private static void encode(ByteBuffer buffer, String player, PlayerStats stats) {
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) name.length).put(name);
+        buffer.putInt(stats.games).putInt(stats.wins).putInt(stats.sets).putInt(stats.penalties).putLong(stats.setMillis);
+    }
+
+    private static Delta decode(ByteBuffer buffer) {
+        byte[] name = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(name);
+        PlayerStats stats = new PlayerStats(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getLong());
+        return new Delta(new String(name, StandardCharsets.UTF_8), stats);
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        for (int i = from; i < to; i++)
+            crc.update(buffer.get(i));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Adds statistics to a player and queues them to be written.
+     */
+    private void add(String player, PlayerStats stats) {
+        if (player.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES)
+            throw new IllegalArgumentException("the name of player " + player.substring(0, 20) + "... is too long");
+        current.merge(player, stats, PlayerStats::plus);
+        pending.add(new Delta(player, stats));
+    }
+
+    /**
+     * Records a set found by a player.
+     *
+     * @param player - the player name.
+     * @param millis - the time it took the player to find the set.
+     */
+    public void recordSet(String player, long millis) {
+        add(player, new PlayerStats(0, 0, 1, 0, millis));
+    }
+
+    /**
+     * Records a penalty of a player.
+     *
+     * @param player - the player name.
+     */
+    public void recordPenalty(String player) {
+        add(player, new PlayerStats(0, 0, 0, 1, 0));
+    }
+
+    /**
+     * Records a game a player finished.
+     *
+     * @param player - the player name.
+     * @param won    - true iff the player won the game (a draw counts as a win of every leader).
+     */
+    public void recordGame(String player, boolean won) {
+        add(player, new PlayerStats(1, won ? 1 : 0, 0, 0, 0));
+    }
+
+    /**
+     * @param player - the player name.
+     * @return - the statistics of the player, or null if the player has none.
+     */
+    public PlayerStats get(String player) {
+        return current.get(player);
+    }
+
+    /**
+     * Called by every user of the store when it is done with it. The last one writes the queued records and the
+     * index, and closes the files (without holding the lock of the stores, so the other stores are not blocked).
+     */
+    @Override
+    public void close() {
+        synchronized (stores) {
+            if (--users > 0)
+                return;
+            pending.add(CLOSE);
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException ignored) {}
+        // the files are released before the store is removed, so opening them again never finds them locked
+        synchronized (stores) {
+            stores.remove(base, this);
+            stores.notifyAll();
+        }
+    }
+}
@@ -4,14 +4,14 @@ import bguspl.set.Env;
 import java.util.LinkedList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class contains the data that is visible to the player.
  *
- * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv slotToCard[x] == y iff cardToSlot[y] == x (if cardToSlot is kept)
  */
 public class Table {
 
@@ -27,13 +27,63 @@ public class Table {
 
     /**
      * Mapping between a card and the slot it is in (null if none).
+     * Kept only if given to the constructor: the game itself does not need it, and it is as long as the deck.
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
 
     /**
-     * The list of tokens of all players.
+     * The tokens of every player, each packed into a single long: the number of tokens in the lowest COUNT_BITS
+     * bits, followed by the slots of the tokens (slotBits bits each) in the order they were placed.
+     * The tokens are changed with compare-and-set only, without locking the table.
      */
-    protected final List<List<Integer>> tokens;
+    protected final AtomicLongArray tokens;
+
+    /**
+     * The players holding a token on every slot, one bit per player: player p is bit p % 64 of
+     * slotPlayers[slot * maskWords + p / 64]. Updated right after the tokens, so collecting a set visits only the
+     * players that hold a token on its slots.
+     */
+    protected final AtomicLongArray slotPlayers;
+
+    /**
+     * The number of longs in the bitmask of a slot.
+     */
+    private final int maskWords;
+
+    /**
+     * The scores and the ranking of the players.
+     */
+    protected final Leaderboard leaderboard;
+
+    /**
+     * Measures how long the sets stay on the table (null if disabled).
+     */
+    protected final SetAvailabilityTracker tracker;
+
+    /**
+     * The legal sets of the current table, shared by the dealer, the players and the hints.
+     */
+    protected final HintService hintService;
+
+    /**
+     * Incremented whenever a card is placed or removed (while the table is locked).
+     */
+    private final AtomicLong cardsVersion = new AtomicLong();
+
+    /**
+     * The number of bits holding the number of tokens of a player.
+     */
+    private static final int COUNT_BITS = 4;
+
+    /**
+     * The number of bits holding the slot of a single token.
+     */
+    private final int slotBits;
+
+    /**
+     * The maximal number of tokens of a player (i.e. the number of cards in a set).
+     */
+    private final int tokenCapacity;
 
     /**
      * The list of cards that are currently on the table.
@@ -45,6 +95,18 @@ public class Table {
      */
     protected Object lockSlotsCards = new Object();
 
+    /**
+     * The version of every slot: incremented before and after every change of the card in the slot, so it is odd
+     * while the card changes and even otherwise.
+     */
+    protected final AtomicIntegerArray slotVersions;
+
+    /**
+     * The version of the slot each token was placed on (at index player * tableSize + slot).
+     * A token is stale iff its version differs from the current version of its slot.
+     */
+    protected final AtomicIntegerArray tokenVersions;
+
     /**
      * Constructor for testing.
      *
@@ -52,7 +114,7 @@ public class Table {
      * @param slotToCard - mapping between a slot and the card placed in it (null if
      *                   none).
      * @param cardToSlot - mapping between a card and the slot it is in (null if
-     *                   none).
+     *                   none), or null to not keep this mapping.
      */
     public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
 
@@ -60,25 +122,20 @@ public class Table {
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
         cardsOnTable = new LinkedList<Integer>();
-        // Initialize tokens list
-        int PlayerSum = env.config.players;
-        tokens = new LinkedList<>();
-        for (int i = 0; i < PlayerSum; i++) {
-            tokens.add(new LinkedList<Integer>());
-        }
-    }
-
-    /*
-     * Constructor for testing.
-     */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot, List<List<Integer>> tokens) {
-
-        this.env = env;
-        this.slotToCard = slotToCard;
-        this.cardToSlot = cardToSlot;
-        cardsOnTable = new LinkedList<Integer>();
-        // Initialize tokens list
-        this.tokens = tokens;
+        slotVersions = new AtomicIntegerArray(slotToCard.length);
+        tokenVersions = new AtomicIntegerArray(env.config.players * slotToCard.length);
+        // Initialize tokens
+        tokenCapacity = env.config.setSize;
+        slotBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(slotToCard.length - 1));
+        if (tokenCapacity >= 1 << COUNT_BITS || COUNT_BITS + tokenCapacity * slotBits > Long.SIZE)
+            throw new IllegalArgumentException("cannot pack " + tokenCapacity + " tokens of " + slotToCard.length + " slots");
+        tokens = new AtomicLongArray(env.config.players);
+        maskWords = Math.max(1, (env.config.players + Long.SIZE - 1) / Long.SIZE);
+        slotPlayers = new AtomicLongArray(slotToCard.length * maskWords);
+        leaderboard = new Leaderboard(env.config.players, env.config.deckSize / Math.max(tokenCapacity, 1));
+        tracker = env.config.trackSets && env.util.setRule() != null
+                ? new SetAvailabilityTracker(env.util.setRule(), slotToCard, env.config.players, env.clock) : null;
+        hintService = new HintService(env, this);
     }
 
     /**
@@ -88,7 +145,7 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, new Integer[env.config.tableSize], null);
     }
 
     /**
@@ -96,15 +153,19 @@ public class Table {
      * table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted()
-                    .collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(
-                    sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        HintService.Sets sets = hintService.current();
+        for (int set = 0; set < sets.count(); set++) {
+            int[][] features = env.util.cardsToFeatures(sets.cards(set));
+            System.out.println("Hint: Set found: slots: " + Arrays.toString(sets.slots(set)) + " features: "
+                    + Arrays.deepToString(features));
+        }
+    }
+
+    /**
+     * @return - the version of the cards on the table, which changes whenever a card is placed or removed.
+     */
+    protected long cardsVersion() {
+        return cardsVersion.get();
     }
 
     /**
@@ -129,16 +190,22 @@ public class Table {
      */
     public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {
         }
 
         synchronized (lockSlotsCards) {
             // place card in slot and vice versa
+            slotVersions.incrementAndGet(slot);
             slotToCard[slot] = card;
-            cardToSlot[card] = slot;
+            if (cardToSlot != null)
+                cardToSlot[card] = slot;
+            slotVersions.incrementAndGet(slot);
+            cardsVersion.incrementAndGet();
             env.ui.placeCard(card, slot);
             cardsOnTable.add(card);
+            if (tracker != null)
+                tracker.cardPlaced(card);
         }
     }
 
@@ -146,10 +213,11 @@ public class Table {
      * Removes a card from a grid slot on the table.
      * 
      * @param slot - the slot from which to remove the card.
+     * @return - the removed card, or null if the slot was empty.
      */
-    public void removeCard(int slot) {
+    public Integer removeCard(int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {
         }
 
@@ -157,11 +225,19 @@ public class Table {
             // remove card from slot and vice versa
             if (slotToCard[slot] != null) {
                 int card = slotToCard[slot];
+                slotVersions.incrementAndGet(slot);
                 slotToCard[slot] = null;
-                cardToSlot[card] = null;
+                if (cardToSlot != null)
+                    cardToSlot[card] = null;
+                slotVersions.incrementAndGet(slot);
+                cardsVersion.incrementAndGet();
                 env.ui.removeCard(slot);
                 cardsOnTable.remove(cardsOnTable.indexOf(card));
+                if (tracker != null)
+                    tracker.cardRemoved(card);
+                return card;
             }
+            return null;
         }
     }
 
@@ -170,16 +246,27 @@ public class Table {
      * 
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     * @return - true iff the token was placed (i.e. it was not there and the player had less than setSize tokens).
      */
-    public void placeToken(int player, int slot) {
+    public boolean placeToken(int player, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {
         }
-        synchronized (lockSlotsCards) {
-            env.ui.placeToken(player, slot);
-            tokens.get(player).add(slot);
-        }
+
+        long ring;
+        int version;
+        do {
+            ring = tokens.get(player);
+            if (indexOf(ring, slot) != -1 || count(ring) == tokenCapacity)
+                return false;
+            version = slotVersions.get(slot);
+            tokenVersions.set(player * slotToCard.length + slot, version);
+        } while (!tokens.compareAndSet(player, ring, withToken(ring, slot)));
+        if (!markPlacedToken(player, slot, version))
+            return false;
+        env.ui.placeToken(player, slot);
+        return true;
     }
 
     /**
@@ -191,19 +278,129 @@ public class Table {
      */
     public boolean removeToken(int player, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {
             return false;
         }
 
-        synchronized (lockSlotsCards) {
+        return takeToken(player, slot);
+    }
+
+    /**
+     * Places a token of a player on a slot with a card, or removes it if it is already there, as one atomic
+     * operation.
+     *
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot of the token.
+     * @return - true iff a token was placed (false if it was removed, or the slot is empty, or the player already
+     *           has setSize tokens).
+     */
+    public boolean toggleToken(int player, int slot) {
+        try {
+            env.clock.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException ignored) {
+            return false;
+        }
+
+        long ring, toggled;
+        int version = 0;
+        do {
+            ring = tokens.get(player);
+            int index = indexOf(ring, slot);
+            if (index != -1) {
+                toggled = withoutToken(ring, index);
+            } else {
+                version = slotVersions.get(slot);
+                if (count(ring) == tokenCapacity || (version & 1) != 0 || slotToCard[slot] == null)
+                    return false;
+                tokenVersions.set(player * slotToCard.length + slot, version);
+                toggled = withToken(ring, slot);
+            }
+        } while (!tokens.compareAndSet(player, ring, toggled));
+
+        boolean placed = count(toggled) > count(ring);
+        if (!placed) {
+            markToken(player, slot, false);
             env.ui.removeToken(player, slot);
-            int location = tokens.get(player).indexOf(slot);
-            if (location != -1)
-                tokens.get(player).remove(location);
+        } else if (markPlacedToken(player, slot, version)) {
+            env.ui.placeToken(player, slot);
+        } else {
+            placed = false;
         }
+        return placed;
+    }
+
+    /**
+     * Removes a token of a player without delay.
+     *
+     * @return - true iff the token was there.
+     */
+    private boolean takeToken(int player, int slot) {
+        long ring;
+        int index;
+        do {
+            ring = tokens.get(player);
+            index = indexOf(ring, slot);
+            if (index == -1)
+                return false;
+        } while (!tokens.compareAndSet(player, ring, withoutToken(ring, index)));
+        markToken(player, slot, false);
+        env.ui.removeToken(player, slot);
         return true;
+    }
+
+    /**
+     * Sets the bit of a token that was just placed, and takes the token back if the slot changed since its version
+     * was read: a set collected meanwhile may have read the bitmask of the slot before the bit was set, and then
+     * neither dropped the token nor cleared the bit. A collection that reads the bitmask after it was set drops
+     * the token itself.
+     *
+     * @return - true iff the token stays on the slot.
+     */
+    private boolean markPlacedToken(int player, int slot, int version) {
+        markToken(player, slot, true);
+        if (slotVersions.get(slot) == version)
+            return true;
+        takeToken(player, slot);
+        return false;
+    }
+
+    /**
+     * Sets or clears the bit of a player in the bitmask of a slot.
+     */
+    private void markToken(int player, int slot, boolean held) {
+        int word = slot * maskWords + player / Long.SIZE;
+        long bit = 1L << player;
+        if (held)
+            slotPlayers.accumulateAndGet(word, bit, (mask, b) -> mask | b);
+        else
+            slotPlayers.accumulateAndGet(word, bit, (mask, b) -> mask & ~b);
+    }
 
+    private static int count(long ring) {
+        return (int) (ring & ((1 << COUNT_BITS) - 1));
+    }
+
+    private int slotAt(long ring, int index) {
+        return (int) (ring >>> (COUNT_BITS + index * slotBits)) & ((1 << slotBits) - 1);
+    }
+
+    private int indexOf(long ring, int slot) {
+        for (int i = 0; i < count(ring); i++)
+            if (slotAt(ring, i) == slot)
+                return i;
+        return -1;
+    }
+
+    private long withToken(long ring, int slot) {
+        return (ring | (long) slot << (COUNT_BITS + count(ring) * slotBits)) + 1;
+    }
+
+    private long withoutToken(long ring, int index) {
+        long slots = ring >>> COUNT_BITS;
+        long below = slots & ((1L << (index * slotBits)) - 1);
+        long above = slots >>> ((index + 1) * slotBits) << (index * slotBits);
+        return (below | above) << COUNT_BITS | (count(ring) - 1);
     }
 
     /**
@@ -227,11 +424,10 @@ public class Table {
      * @param player
      */
     protected void removeAllTokens(int player) {
-        synchronized (lockSlotsCards) {
-        for (int slot : tokens.get(player)) {
-            env.ui.removeToken(player, slot);
-        }
-        tokens.get(player).clear();
+        long ring = tokens.getAndSet(player, 0);
+        for (int i = 0; i < count(ring); i++) {
+            markToken(player, slotAt(ring, i), false);
+            env.ui.removeToken(player, slotAt(ring, i));
         }
     }
 
@@ -242,76 +438,182 @@ public class Table {
      * @return Number of tokens of a player
      */
     protected int getTokenSize(int player) {
-        synchronized (lockSlotsCards) {
-            return tokens.get(player).size();
-        }
+        return count(tokens.get(player));
     }
 
     /**
-     * Returns a list of all tokens of a player
+     * Returns true if a player has a token on a slot
      * 
      * @param player
-     * @return List of all tokens of a player
+     * @param slot
+     * @return true if a player has a token on a slot
      */
-    protected List<Integer> getTokens(int player) {
-        synchronized (lockSlotsCards) {
-            return tokens.get(player);
+    protected boolean isToken(int player, int slot) {
+        return indexOf(tokens.get(player), slot) != -1;
+    }
+
+    /**
+     * Returns the slots of the tokens of a player.
+     *
+     * @param player
+     * @return the slots of the player's tokens, in the order they were placed
+     */
+    protected int[] tokenSlots(int player) {
+        long ring = tokens.get(player);
+        int[] slots = new int[count(ring)];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = slotAt(ring, i);
+        return slots;
+    }
+
+    /**
+     * Returns the versions of the slots at the time a player placed tokens on them.
+     *
+     * @param player
+     * @param slots  - slots the player has tokens on.
+     * @return the version of each token
+     */
+    protected int[] tokenVersions(int player, int[] slots) {
+        int[] versions = new int[slots.length];
+        for (int i = 0; i < slots.length; i++)
+            versions[i] = tokenVersions.get(player * slotToCard.length + slots[i]);
+        return versions;
+    }
+
+    /**
+     * Reads the cards in the given slots without locking the table, provided that none of the slots changed
+     * since the given versions.
+     *
+     * @param slots    - the slots to read.
+     * @param versions - the expected version of each slot.
+     * @return the cards in the slots, or null if any of the slots changed (i.e. the claim is stale)
+     */
+    protected int[] cardsIfCurrent(int[] slots, int[] versions) {
+        int[] cards = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            if (slotVersions.get(slots[i]) != versions[i])
+                return null;
+            Integer card = slotToCard[slots[i]];
+            // the version is re-read to make sure the card did not change while it was read
+            if (card == null || slotVersions.get(slots[i]) != versions[i])
+                return null;
+            cards[i] = card;
         }
+        return cards;
     }
 
     /**
-     * Returns true if a player has a token on a slot
-     * 
+     * Collects a set for a player: removes the cards in the given slots and all the tokens placed on them,
+     * provided that none of the slots changed since the given versions.
+     *
      * @param player
-     * @param slot
-     * @return true if a player has a token on a slot
+     * @param slots    - the slots of the set.
+     * @param versions - the versions the claim was built on.
+     * @return true iff the set was collected, false if the claim is stale
      */
-    protected boolean isToken(int player, int slot) {
+    protected boolean claimSet(int player, int[] slots, int[] versions) {
+        try {
+            env.clock.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException ignored) {
+        }
+
         synchronized (lockSlotsCards) {
-            return tokens.get(player).contains(slot);
+            for (int i = 0; i < slots.length; i++)
+                if (slotVersions.get(slots[i]) != versions[i])
+                    return false;
+            pointToPlayer(player, slots);
+            return true;
         }
     }
 
     /**
-     * Removes all relevant tokens of all players and removes the card from the
-     * table
+     * Removes the tokens of a player that were placed on cards that are no longer in their slots.
+     *
+     * @param player
+     */
+    protected void removeStaleTokens(int player) {
+        int[] slots = tokenSlots(player);
+        int[] versions = tokenVersions(player, slots);
+        for (int i = 0; i < slots.length; i++)
+            if (slotVersions.get(slots[i]) != versions[i])
+                removeToken(player, slots[i]);
+    }
+
+    /**
+     * Removes the cards of the set from the table and all the tokens placed on them, as one commit: the slots are
+     * closed for new tokens (odd versions), the players holding tokens on them are read from the slot bitmasks and
+     * each loses all of them in a single compare-and-set, and the user interface is updated once.
+     * A token placed concurrently, whose bit was not read here, is taken back by its player (see markPlacedToken).
      * 
      * @param player
+     * @param slots  - the slots of the set.
      */
-    protected void pointToPlayer(int player) {
+    private void pointToPlayer(int player, int[] slots) {
         synchronized (lockSlotsCards) {
-            for (int i : tokens.get(player)) {
-                env.ui.removeToken(player, i);
-                removeCard(i);
-                for (int j = 0; j < tokens.size(); j++) {
-                    if (j != player && tokens.get(j).contains(i)) {
-                        removeToken(j, i);
-                    }
+            if (tracker != null)
+                tracker.setClaimed(player, Arrays.stream(slots).map(slot -> slotToCard[slot]).toArray());
+            for (int slot : slots)
+                slotVersions.incrementAndGet(slot);
+
+            for (int word = 0; word < maskWords; word++) {
+                long holders = 0;
+                for (int slot : slots)
+                    holders |= slotPlayers.getAndSet(slot * maskWords + word, 0);
+                for (; holders != 0; holders &= holders - 1)
+                    dropTokens(word * Long.SIZE + Long.numberOfTrailingZeros(holders), slots);
+            }
+
+            for (int slot : slots) {
+                Integer card = slotToCard[slot];
+                if (card != null) {
+                    slotToCard[slot] = null;
+                    if (cardToSlot != null)
+                        cardToSlot[card] = null;
+                    cardsOnTable.remove(card);
+                    if (tracker != null)
+                        tracker.cardRemoved(card);
                 }
+                slotVersions.incrementAndGet(slot);
             }
-            tokens.get(player).clear();
+            cardsVersion.incrementAndGet();
+            env.ui.removeCards(slots);
         }
     }
 
+    /**
+     * Removes the tokens of a player from the given slots in a single compare-and-set (without updating the user
+     * interface).
+     */
+    private void dropTokens(int player, int[] slots) {
+        long ring, dropped;
+        do {
+            ring = tokens.get(player);
+            dropped = ring;
+            for (int slot : slots) {
+                int index = indexOf(dropped, slot);
+                if (index != -1)
+                    dropped = withoutToken(dropped, index);
+            }
+        } while (dropped != ring && !tokens.compareAndSet(player, ring, dropped));
+    }
+
     /**
      * Returns true if there is a set on the table
      * 
      * @return true if there is a set on the table
      */
     protected boolean isSetOnTable() {
-        synchronized (lockSlotsCards) {
-            return env.util.findSets(cardsOnTable, 1).size() > 0;
-        }
+        return !hintService.current().isEmpty();
     }
 
-    protected boolean isAllCardsOnTable(int[] cards){
-        synchronized(lockSlotsCards){
-        for(int card : cards){
-            if(cardsOnTable.indexOf(card) == -1)
-                return false;
-        } 
-    }
-        return true;
+    /**
+     * Finds a legal set among the cards that are currently on the table.
+     *
+     * @return the sorted slots of the cards of a legal set, or null if there is none.
+     */
+    protected int[] findSetSlots() {
+        HintService.Sets sets = hintService.current();
+        return sets.isEmpty() ? null : sets.slots(0);
     }
 
 }
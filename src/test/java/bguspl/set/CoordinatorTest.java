@@ -0,0 +1,188 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoordinatorTest {
+
+    private final Logger logger = new MockLogger();
+    private final List<Thread> workers = new ArrayList<>();
+    private Coordinator coordinator;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (coordinator != null)
+            coordinator.shutdown(5000);
+        for (Thread worker : workers)
+            worker.join(5000);
+    }
+
+    private void startCoordinator(long idleTimeoutMillis) throws IOException {
+        coordinator = new Coordinator(logger, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                4 * Coordinator.HEARTBEAT_MILLIS, idleTimeoutMillis);
+    }
+
+    /**
+     * Waits for a condition, and fails if it does not hold in time.
+     */
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting until " + what);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Starts a worker in this process, and waits until it joined the coordinator.
+     *
+     * @return - the thread the worker runs on (it ends when the worker leaves).
+     */
+    private Thread startWorker(String name, int capacity) throws InterruptedException {
+        Properties properties = Simulator.simulationProperties(logger, new String[]{"FeatureCount=3"});
+        Thread thread = new Thread(() -> {
+            try {
+                new Worker(logger, properties, name, capacity).run("127.0.0.1", coordinator.port());
+            } catch (IOException ignored) {} // the coordinator closed the connection
+        }, name);
+        thread.start();
+        workers.add(thread);
+        await(() -> coordinator.workers().contains(name), name + " joined");
+        return thread;
+    }
+
+    /**
+     * A worker that speaks the protocol from the test: it takes games and never plays them.
+     */
+    private final class FakeWorker implements AutoCloseable {
+        final Socket socket;
+        final BufferedReader in;
+
+        FakeWorker(String name, int capacity) throws IOException, InterruptedException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.port());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)
+                    .println("HELLO " + name + " " + capacity);
+            await(() -> coordinator.workers().contains(name), name + " joined");
+        }
+
+        /**
+         * @return - the next message of the coordinator.
+         */
+        String read() throws IOException {
+            socket.setSoTimeout(10_000);
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static Coordinator.Result result(CompletableFuture<Coordinator.Result> result) throws Exception {
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void submit_PlacesOnLeastLoadedWorker() throws Exception {
+
+        startCoordinator(10_000);
+        startWorker("large", 3);
+        startWorker("small", 1);
+
+        CompletableFuture<Coordinator.Result> first = coordinator.submit(new Properties());
+        // large runs 1 of 3 games and small none, so small is less loaded though large has more free slots
+        CompletableFuture<Coordinator.Result> second = coordinator.submit(new Properties());
+
+        assertEquals("large", result(first).worker);
+        assertEquals("small", result(second).worker);
+        assertTrue(result(first).sets > 0);
+    }
+
+    @Test
+    void drain_WorkerLeavesAfterItsGames() throws Exception {
+
+        startCoordinator(10_000);
+        Thread worker = startWorker("worker", 2);
+        CompletableFuture<Coordinator.Result> running = coordinator.submit(new Properties());
+
+        assertTrue(coordinator.drain("worker"));
+
+        assertEquals("worker", result(running).worker); // the game is played to its end
+        await(() -> coordinator.workers().isEmpty(), "the worker said BYE");
+        await(() -> !worker.isAlive(), "the worker stopped");
+        assertEquals("worker: 1 games played, left", coordinator.report().get(0));
+        assertFalse(coordinator.drain("worker"));
+    }
+
+    @Test
+    void disconnect_PlacesGamesOfLostWorkerAgain() throws Exception {
+
+        startCoordinator(10_000);
+        CompletableFuture<Coordinator.Result> result;
+        try (FakeWorker lost = new FakeWorker("lost", 1)) {
+            result = coordinator.submit(new Properties());
+            assertTrue(lost.read().startsWith("START "));
+            startWorker("worker", 1); // the session stays placed on the lost worker until it leaves
+        }
+
+        assertEquals("worker", result(result).worker);
+        assertTrue(coordinator.report().contains("lost: 0 games played, left"));
+    }
+
+    @Test
+    void expire_FailsWaitingSessionsWithoutWorkers() throws Exception {
+
+        startCoordinator(200);
+        CompletableFuture<Coordinator.Result> never = coordinator.submit(new Properties());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> never.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("no worker connected"), e.getCause().getMessage());
+    }
+
+    @Test
+    void expire_FailsGamesOfLastWorkerThatLeft() throws Exception {
+
+        startCoordinator(200);
+        CompletableFuture<Coordinator.Result> result;
+        try (FakeWorker lost = new FakeWorker("lost", 1)) {
+            result = coordinator.submit(new Properties());
+            assertTrue(lost.read().startsWith("START"));
+        }
+
+        assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertThrows(TimeoutException.class, () -> coordinator.submit(new Properties()).get(0, TimeUnit.SECONDS),
+                "a new session waits for the idle timeout before it fails");
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyMapTest {
+
+    private Config config;
+    private KeyMap keyMap;
+
+    @BeforeEach
+    void setUp() {
+        // 8 human players on the default 3x4 table use the key presets of the configuration
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "8");
+        properties.put("ComputerPlayers", "0");
+        config = new Config(new MockLogger(), properties);
+        keyMap = KeyMap.of(config, new MockLogger());
+    }
+
+    @Test
+    void find_PresetsDoNotCollide() {
+
+        for (int player = 0; player < config.humanPlayers; ++player) {
+            assertEquals(config.tableSize, config.playerKeys(player).length);
+            for (int slot = 0; slot < config.tableSize; ++slot) {
+                int index = keyMap.find(config.playerKeys(player)[slot]);
+
+                assertTrue(index >= 0 && index < keyMap.capacity());
+                assertEquals(player, keyMap.player(index));
+                assertEquals(slot, keyMap.slot(index));
+            }
+        }
+    }
+
+    @Test
+    void find_UnmappedKeysMiss() {
+
+        Set<Integer> mapped = new HashSet<>();
+        for (int player = 0; player < config.humanPlayers; ++player)
+            for (int keyCode : config.playerKeys(player))
+                mapped.add(keyCode);
+        assertEquals(config.humanPlayers * config.tableSize, mapped.size());
+
+        for (int keyCode = -1; keyCode <= 0xFFFF; ++keyCode)
+            if (!mapped.contains(keyCode))
+                assertEquals(-1, keyMap.find(keyCode), "key " + keyCode);
+        assertEquals(-1, keyMap.find(Integer.MAX_VALUE));
+        assertEquals(-1, keyMap.find(Integer.MIN_VALUE));
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchmakerTest {
+
+    private final List<Matchmaker.Match> matches = Collections.synchronizedList(new ArrayList<>());
+    private Matchmaker matchmaker;
+
+    @AfterEach
+    void tearDown() {
+        if (matchmaker != null)
+            matchmaker.close();
+    }
+
+    private static Matchmaker.Ticket ticket(String name, double rating, int size) {
+        return new Matchmaker.Ticket(name, false, "RANDOM", rating, size);
+    }
+
+    @Test
+    void enqueue_PairsClosestRatings() {
+
+        matchmaker = new Matchmaker(100, 0, 0, matches::add);
+        Matchmaker.Ticket a = ticket("a", 1500, 2), b = ticket("b", 1900, 2), c = ticket("c", 1540, 2);
+
+        assertNull(matchmaker.enqueue(a));
+        assertNull(matchmaker.enqueue(b)); // a spread of 400 is beyond the tolerance
+        Matchmaker.Match match = matchmaker.enqueue(c);
+
+        assertEquals(Arrays.asList(a, c), match.tickets);
+        assertEquals(Collections.singletonList(match), matches);
+        assertEquals(1, matchmaker.waiting());
+        assertEquals(3, matchmaker.enqueued());
+        assertEquals(2, matchmaker.matched());
+    }
+
+    @Test
+    void enqueue_MatchesOnlyPlayersOfSameSize() {
+
+        matchmaker = new Matchmaker(100, 0, 0, matches::add);
+        Matchmaker.Ticket a = ticket("a", 1500, 3), b = ticket("b", 1510, 3);
+
+        assertNull(matchmaker.enqueue(a));
+        assertNull(matchmaker.enqueue(ticket("pair", 1505, 2)));
+        assertNull(matchmaker.enqueue(b));
+        Matchmaker.Ticket c = ticket("c", 1490, 3);
+        Matchmaker.Match match = matchmaker.enqueue(c);
+
+        assertEquals(Arrays.asList(c, a, b), match.tickets); // by ascending rating
+        assertEquals(20, match.spread());
+        assertEquals(1, matchmaker.waiting());
+    }
+
+    @Test
+    void sweep_MatchesWhenToleranceWidens() throws InterruptedException {
+
+        matchmaker = new Matchmaker(10, 1000, 0, matches::add);
+        matchmaker.enqueue(ticket("a", 1500, 2));
+        matchmaker.enqueue(ticket("b", 1600, 2));
+
+        matchmaker.sweep();
+        assertTrue(matches.isEmpty());
+        assertEquals(2, matchmaker.waiting());
+
+        Thread.sleep(200); // the players accept a spread of 10 + 1000 * 0.2 by now
+        matchmaker.sweep();
+
+        assertEquals(1, matches.size());
+        assertEquals(0, matchmaker.waiting());
+    }
+
+    @Test
+    void sweeper_MatchesWaitingPlayersInBackground() throws InterruptedException {
+
+        CountDownLatch matched = new CountDownLatch(1);
+        matchmaker = new Matchmaker(10, 1000, 20, match -> matched.countDown());
+        matchmaker.enqueue(ticket("a", 1500, 2));
+        matchmaker.enqueue(ticket("b", 1600, 2));
+
+        assertTrue(matched.await(5, TimeUnit.SECONDS));
+        assertEquals(0, matchmaker.waiting());
+    }
+
+    @Test
+    void cancel_RemovesWaitingPlayer() throws InterruptedException {
+
+        matchmaker = new Matchmaker(100, 1000, 0, matches::add);
+        Matchmaker.Ticket a = ticket("a", 1500, 2);
+        matchmaker.enqueue(a);
+
+        assertTrue(matchmaker.cancel(a));
+        assertFalse(matchmaker.cancel(a));
+        assertFalse(matchmaker.cancel(ticket("never enqueued", 1500, 4)));
+        assertNull(matchmaker.enqueue(ticket("b", 1500, 2)));
+
+        Thread.sleep(50);
+        matchmaker.sweep();
+        assertTrue(matches.isEmpty());
+        assertEquals(1, matchmaker.waiting());
+    }
+
+    @Test
+    void cancel_MatchedPlayerIsNotWaiting() {
+
+        matchmaker = new Matchmaker(100, 0, 0, matches::add);
+        Matchmaker.Ticket a = ticket("a", 1500, 2);
+        matchmaker.enqueue(a);
+        matchmaker.enqueue(ticket("b", 1520, 2));
+
+        assertFalse(matchmaker.cancel(a));
+        assertEquals(0, matchmaker.waiting());
+    }
+}
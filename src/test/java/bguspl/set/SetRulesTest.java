@@ -0,0 +1,186 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetRulesTest {
+
+    private Config config;
+
+    private Config config(String rule, int featureSize, int featureCount, int setSize) {
+        Properties properties = new Properties();
+        properties.put("SetRule", rule);
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("SetSize", Integer.toString(setSize));
+        config = new Config(new MockLogger(), properties);
+        return config;
+    }
+
+    /**
+     * @return - the id of the card with the given feature values (the first feature is the most significant).
+     */
+    private int card(int... features) {
+        int card = 0;
+        for (int feature : features)
+            card = card * config.featureSize + feature;
+        return card;
+    }
+
+    /**
+     * Checks that a rule of 3 cards legalizes exactly the card it completes any 2 cards with.
+     */
+    private void assertCompletionAgreesWithTest(SetRule rule) {
+        for (int a = 0; a < config.deckSize; ++a)
+            for (int b = a + 1; b < config.deckSize; ++b) {
+                int completion = rule.complete(new int[]{a, b});
+                for (int c = 0; c < config.deckSize; ++c)
+                    if (c != a && c != b)
+                        assertEquals(c == completion, rule.test(new int[]{a, b, c}), a + ", " + b + ", " + c);
+            }
+    }
+
+    @Test
+    void classic_KnownSets() {
+        SetRule rule = SetRules.create(config("CLASSIC", 3, 4, 3));
+
+        assertEquals(3, rule.size());
+        assertTrue(rule.test(new int[]{card(0, 0, 0, 0), card(1, 1, 1, 1), card(2, 2, 2, 2)}));
+        assertTrue(rule.test(new int[]{card(0, 1, 2, 0), card(1, 2, 0, 0), card(2, 0, 1, 0)}));
+        assertFalse(rule.test(new int[]{card(0, 0, 0, 0), card(0, 0, 0, 1), card(0, 0, 1, 2)}));
+        assertFalse(rule.test(new int[]{card(0, 0, 0, 0), card(1, 1, 1, 1), card(2, 2, 2, 1)}));
+        assertEquals(card(2, 0, 1, 0), rule.complete(new int[]{card(0, 1, 2, 0), card(1, 2, 0, 0)}));
+    }
+
+    @Test
+    void classic_CompletionAgreesWithTest() {
+        assertCompletionAgreesWithTest(SetRules.create(config("CLASSIC", 3, 4, 3)));
+    }
+
+    /**
+     * @return - all the combinations of size cards of the deck, size card ids per combination.
+     */
+    private int[] combinations(int size) {
+        int[] combination = new int[size];
+        for (int i = 0; i < size; ++i)
+            combination[i] = i;
+        int[] all = new int[0];
+        int count = 0;
+        while (combination[size - 1] < config.deckSize) {
+            if ((count + 1) * size > all.length)
+                all = Arrays.copyOf(all, Math.max(size, all.length * 2));
+            System.arraycopy(combination, 0, all, count++ * size, size);
+            int t = size - 1;
+            while (t != 0 && combination[t] == config.deckSize - size + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < size; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return Arrays.copyOf(all, count * size);
+    }
+
+    /**
+     * Checks that testAll agrees with test for all the combinations of the deck, tested in batches of the given size
+     * (the last batch may be partial, like the last batch of a search).
+     */
+    private void assertTestAllAgreesWithTest(SetRule rule, int batchSize) {
+        int size = rule.size();
+        int[] all = combinations(size);
+        int[] cards = new int[size];
+        for (int first = 0; first < all.length / size; first += batchSize) {
+            int count = Math.min(batchSize, all.length / size - first);
+            BitSet legal = new BitSet();
+            legal.set(0, count + Long.SIZE + 1); // the bits of the candidates are overwritten, the others are kept
+
+            rule.testAll(Arrays.copyOfRange(all, first * size, (first + count) * size), legal);
+
+            BitSet expected = new BitSet();
+            for (int i = 0; i < count; ++i) {
+                System.arraycopy(all, (first + i) * size, cards, 0, size);
+                expected.set(i, rule.test(cards));
+            }
+            expected.set(count, count + Long.SIZE + 1);
+            assertEquals(expected, legal, "batch at " + first);
+        }
+    }
+
+    @Test
+    void classic_TestAllAgreesWithTest() {
+        SetRule rule = SetRules.create(config("CLASSIC", 3, 4, 3));
+        for (int batchSize : new int[]{1, 63, 64, 65, 256, 1000, 85_320})
+            assertTestAllAgreesWithTest(rule, batchSize);
+    }
+
+    @Test
+    void classic_TestAllAgreesWithTestForFourCards() {
+        SetRule rule = SetRules.create(config("CLASSIC", 4, 3, 4));
+        for (int batchSize : new int[]{63, 64, 1000})
+            assertTestAllAgreesWithTest(rule, batchSize);
+    }
+
+    @Test
+    void sum_KnownSets() {
+        SetRule rule = SetRules.create(config("SUM", 5, 2, 3));
+
+        assertEquals(3, rule.size());
+        assertTrue(rule.test(new int[]{card(0, 1), card(1, 2), card(4, 2)}));
+        assertTrue(rule.test(new int[]{card(1, 3), card(2, 4), card(2, 3)}));
+        assertFalse(rule.test(new int[]{card(0, 1), card(1, 2), card(4, 3)}));
+        assertEquals(card(4, 2), rule.complete(new int[]{card(0, 1), card(1, 2)}));
+        assertEquals(-1, rule.complete(new int[]{card(0, 0), card(0, 0)}));
+    }
+
+    @Test
+    void sum_CompletionAgreesWithTest() {
+        assertCompletionAgreesWithTest(SetRules.create(config("SUM", 5, 2, 3)));
+    }
+
+    @Test
+    void ultra_KnownSets() {
+        SetRule rule = SetRules.create(config("ULTRA", 3, 4, 3));
+        int[] set = {card(0, 0, 0, 0), card(1, 1, 1, 1), card(0, 1, 2, 0), card(1, 0, 2, 1)};
+
+        assertEquals(4, rule.size());
+        assertTrue(rule.test(set));
+        assertTrue(rule.test(new int[]{set[2], set[0], set[3], set[1]}));
+        assertFalse(rule.test(new int[]{card(0, 0, 0, 0), card(1, 1, 1, 1), card(0, 1, 2, 0), card(1, 0, 2, 2)}));
+        assertEquals(-1, rule.complete(new int[]{set[0], set[1], set[2]}));
+    }
+
+    @Test
+    void ultra_AgreesWithClassicCompletions() {
+        SetRule ultra = SetRules.create(config("ULTRA", 3, 4, 3));
+        SetRule classic = SetRules.create(config("CLASSIC", 3, 4, 3));
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; ++i) {
+            int[] cards = random.ints(0, config.deckSize).distinct().limit(4).toArray();
+            boolean expected = false;
+            for (int[] pairing : new int[][]{{0, 1, 2, 3}, {0, 2, 1, 3}, {0, 3, 1, 2}})
+                expected |= classic.complete(new int[]{cards[pairing[0]], cards[pairing[1]]})
+                        == classic.complete(new int[]{cards[pairing[2]], cards[pairing[3]]});
+            assertEquals(expected, ultra.test(cards));
+        }
+    }
+
+    @Test
+    void config_ClassicSetLargerThanFeatureSize() {
+        assertEquals(3, config("CLASSIC", 3, 4, 4).setSize);
+        assertEquals(4, config("SUM", 3, 4, 4).setSize);
+        assertEquals(3, config("SUM", 3, 4, 1).setSize);
+        assertEquals(3, config("CLASSIC", 1, 4, 3).featureSize);
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
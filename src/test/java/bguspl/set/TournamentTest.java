@@ -0,0 +1,87 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TournamentTest {
+
+    private GameSessions sessions;
+
+    @BeforeEach
+    void setUp() {
+        Logger logger = new MockLogger();
+        sessions = new GameSessions(logger, Simulator.simulationProperties(logger, new String[0]), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessions.close();
+    }
+
+    private static List<Matchmaker.Ticket> entrants(int players) {
+        List<Matchmaker.Ticket> entrants = new ArrayList<>();
+        for (int i = 0; i < players; i++)
+            entrants.add(new Matchmaker.Ticket("Bot " + (i + 1), false, "RANDOM", 2000 - 100 * i, 2));
+        return entrants;
+    }
+
+    /**
+     * Checks that every game of the tournament had at least two players, and every player of a round played or had a
+     * bye.
+     */
+    private void assertNoGameAlone(Tournament tournament, int players) {
+        int remaining = players;
+        for (int round = 0; round < tournament.rounds().size(); round++) {
+            int seated = tournament.byes().get(round).size();
+            for (Tournament.Game game : tournament.rounds().get(round)) {
+                assertTrue(game.players.size() >= 2, "round " + (round + 1) + ": " + game);
+                seated += game.players.size();
+            }
+            assertEquals(remaining, seated, "round " + (round + 1));
+            remaining = tournament.rounds().get(round).size() + tournament.byes().get(round).size();
+        }
+    }
+
+    @Test
+    void play_OddFieldGivesTopSeedABye() {
+
+        List<Matchmaker.Ticket> entrants = entrants(3);
+        Tournament tournament = new Tournament(sessions, 2, 1);
+        List<Matchmaker.Ticket> champions = tournament.play(entrants);
+
+        assertEquals(2, tournament.rounds().size());
+        assertEquals(Collections.singletonList(entrants.get(0)), tournament.byes().get(0));
+        assertTrue(tournament.byes().get(1).isEmpty());
+        List<Matchmaker.Ticket> finalists = tournament.rounds().get(1).get(0).players;
+        assertTrue(finalists.contains(entrants.get(0)));
+        assertFalse(champions.isEmpty());
+        assertTrue(finalists.containsAll(champions));
+        assertNoGameAlone(tournament, 3);
+    }
+
+    @Test
+    void play_OddFieldsOfEveryRound() {
+
+        for (int players : new int[]{5, 7}) {
+            Tournament tournament = new Tournament(sessions, 2, 1);
+            assertFalse(tournament.play(entrants(players)).isEmpty());
+            assertNoGameAlone(tournament, players);
+        }
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
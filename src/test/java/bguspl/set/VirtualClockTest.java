@@ -0,0 +1,102 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualClockTest {
+
+    private final VirtualClock clock = new VirtualClock();
+
+    /**
+     * The name and the time of every thread that woke up, in the order they woke up.
+     */
+    private final List<String> woken = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Creates a thread of the game (attached to the clock) that detaches itself when it ends.
+     */
+    private Thread gameThread(String name, Action action) {
+        Thread thread = new Thread(() -> {
+            try {
+                action.run();
+                woken.add(name + "@" + clock.millis());
+            } catch (InterruptedException ignored) {
+            } finally {
+                clock.detach(Thread.currentThread());
+            }
+        }, name);
+        clock.attach(thread);
+        return thread;
+    }
+
+    interface Action {
+        void run() throws InterruptedException;
+    }
+
+    private static void startAndJoin(Thread... threads) throws InterruptedException {
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse(thread.isAlive(), thread.getName());
+        }
+    }
+
+    @Test
+    void sleep_SleepersWakeInDeadlineOrder() throws InterruptedException {
+
+        long start = System.nanoTime();
+        startAndJoin(gameThread("long", () -> clock.sleep(60_000)), gameThread("short", () -> clock.sleep(30_000)));
+
+        assertEquals(Arrays.asList("short@30000", "long@60000"), woken);
+        assertEquals(60_000, clock.millis());
+        assertTrue(System.nanoTime() - start < 5_000_000_000L); // far less than the simulated minute
+    }
+
+    @Test
+    void await_SignalWakesBeforeDeadline() throws InterruptedException {
+
+        Object monitor = new Object();
+        Thread waiter = gameThread("waiter", () -> {
+            synchronized (monitor) {
+                clock.await(monitor, 60_000);
+            }
+        });
+        Thread signaler = gameThread("signaler", () -> {
+            clock.sleep(100);
+            synchronized (monitor) {
+                clock.signalAll(monitor);
+            }
+        });
+        startAndJoin(waiter, signaler);
+
+        assertTrue(woken.contains("waiter@100"), woken.toString());
+        assertEquals(100, clock.millis());
+    }
+
+    @Test
+    void detach_LastWorkingThreadAdvancesClock() throws InterruptedException {
+
+        clock.attach(Thread.currentThread()); // this thread works until it detaches
+        Thread sleeper = gameThread("sleeper", () -> clock.sleep(500));
+        sleeper.start();
+        Thread.sleep(100);
+
+        assertTrue(sleeper.isAlive());
+        assertEquals(0, clock.millis());
+
+        clock.detach(Thread.currentThread());
+        sleeper.join(5000);
+
+        assertFalse(sleeper.isAlive());
+        assertEquals(Collections.singletonList("sleeper@500"), woken);
+    }
+}
@@ -1,9 +1,13 @@
 package bguspl.set.ex;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import org.junit.jupiter.api.AfterEach;
@@ -33,6 +37,7 @@ class DealerTest {
     @Mock
     private Logger logger;
     private Player[] players;
+    private Env env;
 
 
 
@@ -46,7 +51,7 @@ class DealerTest {
     @BeforeEach
     void setUp() {
         // purposely do not find the configuration files (use defaults here).
-        Env env = new Env(logger, new Config(logger, ""), ui, util);
+        env = new Env(logger, new Config(logger, ""), ui, util);
         table = new Table(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
         player = new Player(env, dealer, table, 0, false);
         players = new Player[1];
@@ -66,6 +71,30 @@ class DealerTest {
         assertTrue(dealer.getReshuffleTime()>=System.currentTimeMillis()+59000);
     }
 
+    @Test
+    void restore_ClaimsRestoredFullSetOfTokens() throws InterruptedException {
+        when(util.testSet(any())).thenReturn(true);
+        int[] slotToCard = new int[env.config.tableSize];
+        Arrays.fill(slotToCard, -1);
+        slotToCard[0] = 0;
+        slotToCard[4] = 1;
+        slotToCard[7] = 2;
+        players[0] = new Player(env, dealer, table, 0, true);
+        dealer.restore(new GameSnapshot(env.config.deckSize, 0, new int[0], slotToCard, new int[][]{{0, 4, 7}}, new int[]{2}));
+
+        // no key is pressed: the player claims the set of its restored tokens when its thread starts
+        Thread playerThread = new Thread(players[0]);
+        playerThread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (players[0].score() == 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        players[0].terminate();
+        playerThread.join();
+
+        assertEquals(3, players[0].score());
+        assertEquals(0, table.getTokenSize(0));
+    }
+
     @Test
     void testSetFreeze(){
         //test if the freeze time is set correctly
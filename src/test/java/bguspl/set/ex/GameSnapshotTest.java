@@ -0,0 +1,75 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GameSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private GameSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        file = directory.resolve("snapshot");
+        int[] deck = {7, 3, 80, 0, 42};
+        int[] slotToCard = {5, -1, 11, 12, 13, -1, 20, 21, 22, 30, 31, 32};
+        int[][] tokens = {{0, 2, 3}, {}, {6}};
+        int[] scores = {4, 0, 17};
+        snapshot = new GameSnapshot(81, 12345L, deck, slotToCard, tokens, scores);
+    }
+
+    @Test
+    void read_ReturnsWrittenSnapshot() throws IOException {
+
+        snapshot.write(file);
+        GameSnapshot read = GameSnapshot.read(file);
+
+        assertEquals(snapshot.deckSize, read.deckSize);
+        assertEquals(snapshot.tableSize, read.tableSize);
+        assertEquals(snapshot.players, read.players);
+        assertEquals(snapshot.timerMillis, read.timerMillis);
+        assertArrayEquals(snapshot.deck, read.deck);
+        assertArrayEquals(snapshot.slotToCard, read.slotToCard);
+        assertArrayEquals(snapshot.tokens, read.tokens);
+        assertArrayEquals(snapshot.scores, read.scores);
+    }
+
+    @Test
+    void read_FlippedByteIsRejected() throws IOException {
+
+        snapshot.write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] corrupted = bytes.clone();
+            corrupted[i] ^= 0x10;
+            Files.write(file, corrupted);
+
+            assertThrows(IOException.class, () -> GameSnapshot.read(file), "byte " + i);
+        }
+    }
+
+    @Test
+    void read_TruncatedFileIsRejected() throws IOException {
+
+        snapshot.write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+
+            assertThrows(IOException.class, () -> GameSnapshot.read(file), length + " bytes");
+        }
+    }
+}
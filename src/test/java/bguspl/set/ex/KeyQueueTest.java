@@ -0,0 +1,89 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyQueueTest {
+
+    private final KeyQueue keys = new KeyQueue(3);
+
+    /**
+     * Waits for a thread to end, and fails if it does not end in time.
+     */
+    private void assertEnds(Thread thread) throws InterruptedException {
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    void offer_PressOfQueuedSlotIsCoalesced() {
+
+        assertTrue(keys.offer(3));
+        assertTrue(keys.offer(3));
+        assertTrue(keys.offer(4));
+
+        assertEquals(3, keys.take());
+        keys.done();
+        assertEquals(4, keys.take());
+        keys.done();
+        assertTrue(keys.stats().contains("1 coalesced, 0 dropped"), keys.stats());
+    }
+
+    @Test
+    void offer_FullQueueDropsNewPress() {
+
+        for (int slot = 0; slot < 3; slot++)
+            assertTrue(keys.offer(slot));
+
+        assertFalse(keys.offer(7));
+        assertTrue(keys.offer(1)); // coalesced, even though the queue is full
+
+        for (int slot = 0; slot < 3; slot++) {
+            assertEquals(slot, keys.take());
+            keys.done();
+        }
+        assertTrue(keys.stats().contains("1 coalesced, 1 dropped"), keys.stats());
+    }
+
+    @Test
+    void close_WakesWaitingTake() throws InterruptedException {
+
+        AtomicInteger taken = new AtomicInteger();
+        Thread player = new Thread(() -> taken.set(keys.take()));
+        player.start();
+        Thread.sleep(50);
+
+        keys.close();
+
+        assertEnds(player);
+        assertEquals(KeyQueue.CLOSED, taken.get());
+        assertFalse(keys.offer(1));
+    }
+
+    @Test
+    void awaitIdle_ReturnsWhenPressesWereHandled() throws InterruptedException {
+
+        keys.offer(2);
+        keys.offer(5);
+        Thread waiter = new Thread(() -> {
+            try {
+                keys.awaitIdle();
+            } catch (InterruptedException ignored) {}
+        });
+        waiter.start();
+
+        keys.take();
+        keys.done();
+        keys.take();
+        Thread.sleep(50);
+        assertTrue(waiter.isAlive()); // the last press is still being handled
+
+        keys.done();
+        assertEnds(waiter);
+    }
+}
@@ -0,0 +1,68 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LeaderboardTest {
+
+    Leaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() {
+        leaderboard = new Leaderboard(4, 10);
+    }
+
+    private void assertRanks(int... ranks) {
+        for (int player = 0; player < ranks.length; player++)
+            assertEquals(ranks[player], leaderboard.rank(player), "player " + player);
+    }
+
+    @Test
+    void rank_NoPoints() {
+
+        assertRanks(1, 1, 1, 1);
+        assertArrayEquals(new int[]{0, 1, 2, 3}, leaderboard.leaders());
+    }
+
+    @Test
+    void rank_TiedPlayersShareRank() {
+
+        leaderboard.increment(0);
+        leaderboard.increment(1);
+        leaderboard.increment(0);
+        leaderboard.increment(1);
+        leaderboard.increment(2);
+
+        assertRanks(1, 1, 3, 4);
+        assertArrayEquals(new int[]{0, 1}, leaderboard.leaders());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, leaderboard.topK(4));
+    }
+
+    @Test
+    void rank_AfterSet() {
+
+        leaderboard.increment(0);
+        leaderboard.increment(0);
+        leaderboard.increment(1);
+        leaderboard.set(3, 5);
+
+        assertRanks(2, 3, 4, 1);
+        assertArrayEquals(new int[]{3}, leaderboard.leaders());
+
+        leaderboard.set(0, 0);
+        leaderboard.set(2, 100); // beyond the expected maximal score
+
+        assertEquals(100, leaderboard.score(2));
+        assertRanks(4, 3, 1, 2);
+        assertArrayEquals(new int[]{2, 3, 1, 0}, leaderboard.topK(4));
+        assertArrayEquals(new int[]{2, 3}, leaderboard.topK(2));
+
+        leaderboard.set(1, 5);
+
+        assertRanks(4, 2, 1, 2);
+        assertArrayEquals(new int[]{2, 1, 3, 0}, leaderboard.topK(4));
+    }
+}
@@ -0,0 +1,160 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private Path base, logFile, indexFile;
+    private final Logger logger = new MockLogger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        base = directory.resolve("stats");
+        logFile = directory.resolve("stats.log");
+        indexFile = directory.resolve("stats.idx");
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            stats.recordSet("alice", 300);
+            stats.recordSet("alice", 100);
+            stats.recordGame("alice", true);
+            stats.recordPenalty("bob");
+            stats.recordGame("bob", false);
+        }
+    }
+
+    private void assertRecorded(StatsStore stats) {
+        StatsStore.PlayerStats alice = stats.get("alice");
+        assertEquals(1, alice.games);
+        assertEquals(1, alice.wins);
+        assertEquals(2, alice.sets);
+        assertEquals(0, alice.penalties);
+        assertEquals(200, alice.averageSetMillis());
+        StatsStore.PlayerStats bob = stats.get("bob");
+        assertEquals(1, bob.games);
+        assertEquals(0, bob.wins);
+        assertEquals(1, bob.penalties);
+    }
+
+    @Test
+    void open_ReadsClosedStore() throws IOException {
+
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertRecorded(stats);
+            assertNull(stats.get("carol"));
+        }
+    }
+
+    @Test
+    void open_DropsTornRecordAtTheEnd() throws IOException {
+
+        byte[] log = Files.readAllBytes(logFile);
+        // the beginning of a record: its length and part of its CRC
+        Files.write(logFile, new byte[]{0, 0, 0, 30, 1, 2}, StandardOpenOption.APPEND);
+
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertRecorded(stats);
+            stats.recordSet("carol", 50);
+        }
+
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertRecorded(stats);
+            assertEquals(1, stats.get("carol").sets);
+        }
+        byte[] repaired = Files.readAllBytes(logFile);
+        assertTrue(Arrays.equals(log, Arrays.copyOf(repaired, log.length)), "the records before the torn one are kept");
+    }
+
+    @Test
+    void open_RebuildsMissingIndex() throws IOException {
+
+        Files.delete(indexFile);
+
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertRecorded(stats);
+        }
+        assertTrue(Files.exists(indexFile));
+    }
+
+    @Test
+    void open_RebuildsCorruptedIndex() throws IOException {
+
+        byte[] index = Files.readAllBytes(indexFile);
+        index[index.length / 2] ^= 0x10;
+        Files.write(indexFile, index);
+
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertRecorded(stats);
+        }
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertRecorded(stats);
+        }
+    }
+
+    @Test
+    void open_SharesStoreOfSameFiles() throws IOException {
+
+        StatsStore first = StatsStore.open(base, logger);
+        StatsStore second = StatsStore.open(directory.resolve("other/../stats"), logger);
+        assertSame(first, second);
+
+        first.close();
+        second.recordSet("carol", 10); // still open for the second game
+        second.close();
+
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertEquals(1, stats.get("carol").sets);
+        }
+    }
+
+    @Test
+    void open_WhileLastUserClosesStore() throws Exception {
+
+        for (int i = 0; i < 20; i++) {
+            StatsStore closing = StatsStore.open(base, logger);
+            closing.recordSet("carol", 10);
+            Thread closer = new Thread(closing::close);
+            closer.start();
+            try (StatsStore stats = StatsStore.open(base, logger)) { // the files are never found locked
+                assertRecorded(stats);
+            }
+            closer.join();
+        }
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertEquals(20, stats.get("carol").sets);
+        }
+    }
+
+    @Test
+    void recordSet_RejectsNameLongerThanRecord() throws IOException {
+
+        char[] name = new char[StatsStore.MAX_NAME_BYTES / 2 + 1];
+        Arrays.fill(name, '\u00e9'); // 2 bytes in UTF-8
+        try (StatsStore stats = StatsStore.open(base, logger)) {
+            assertThrows(IllegalArgumentException.class, () -> stats.recordSet(new String(name), 10));
+            assertNull(stats.get(new String(name)));
+        }
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
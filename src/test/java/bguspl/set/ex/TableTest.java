@@ -3,47 +3,51 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.SetRule;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
     private Integer[] slotToCard;
     private Integer[] cardToSlot;
-    private List<List<Integer>> tokens;
 
 
     @BeforeEach
     void setUp() {
 
+        // 9 slots and 3 players (2 human players by default), so every player has a token ring of setSize slots
         Properties properties = new Properties();
-        properties.put("Rows", "2");
-        properties.put("Columns", "2");
+        properties.put("Rows", "3");
+        properties.put("Columns", "3");
         properties.put("FeatureSize", "3");
         properties.put("FeatureCount", "4");
+        properties.put("ComputerPlayers", "1");
         properties.put("TableDelaySeconds", "0");
-        properties.put("PlayerKeys1", "81,87,69,82");
-        properties.put("PlayerKeys2", "85,73,79,80");
+        properties.put("PlayerKeys1", "81,87,69,65,83,68,90,88,67");
+        properties.put("PlayerKeys2", "85,73,79,74,75,76,77,44,46");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
         slotToCard = new Integer[config.tableSize];
         cardToSlot = new Integer[config.deckSize];
 
-        tokens = new LinkedList<>();
-
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
-        table = new Table(env, slotToCard, cardToSlot,tokens);
+        table = new Table(env, slotToCard, cardToSlot);
     }
 
     private int fillSomeSlots() {
@@ -63,9 +67,6 @@ class TableTest {
     }
 
     private void fillSomeTokens(){
-        for (int i = 0; i < 3; ++i) {
-            tokens.add(new LinkedList<Integer>());
-        }
         table.placeToken(0,1);
         table.placeToken(0,2);
         table.placeToken(1,3);
@@ -74,6 +75,14 @@ class TableTest {
         table.placeToken(2,6);
     }
 
+    /**
+     * Checks that the bitmask of every slot agrees with the tokens of a player (one word per slot for 3 players).
+     */
+    private void assertBitmaskMatchesTokens(int player) {
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            assertEquals(table.isToken(player, slot), (table.slotPlayers.get(slot) >>> player & 1) == 1, "slot " + slot);
+    }
+
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
@@ -120,7 +129,7 @@ class TableTest {
             fillSomeTokens();
             table.removeAllTokens(0);
     
-            assertEquals(0,tokens.get(0).size() );
+            assertEquals(0,table.getTokenSize(0) );
 
     }
 
@@ -130,7 +139,94 @@ class TableTest {
             fillSomeTokens();
             table.placeToken(2, 8);
     
-            assertEquals(true,tokens.get(2).contains(8) );
+            assertEquals(true,table.isToken(2, 8) );
+    }
+
+    @Test
+    void toggleToken_FullRingKeepsPlacementOrder() {
+
+        fillAllSlots();
+        table.toggleToken(0, 5);
+        table.toggleToken(0, 1);
+        table.toggleToken(0, 8);
+
+        assertFalse(table.placeToken(0, 2));
+        assertFalse(table.toggleToken(0, 2));
+        assertArrayEquals(new int[]{5, 1, 8}, table.tokenSlots(0));
+
+        assertFalse(table.toggleToken(0, 1));
+        assertArrayEquals(new int[]{5, 8}, table.tokenSlots(0));
+        assertTrue(table.toggleToken(0, 2));
+        assertArrayEquals(new int[]{5, 8, 2}, table.tokenSlots(0));
+        assertBitmaskMatchesTokens(0);
+    }
+
+    @Test
+    void toggleToken_ConcurrentTogglesOfOnePlayer() throws InterruptedException {
+
+        fillAllSlots();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; ++i)
+                    table.toggleToken(1, random.nextInt(slotToCard.length));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        int[] slots = table.tokenSlots(1);
+        assertTrue(slots.length <= 3);
+        assertEquals(slots.length, Arrays.stream(slots).distinct().count());
+        assertBitmaskMatchesTokens(1);
+    }
+
+    @Test
+    void claimSet_DropsTokensOfAllHolders() {
+
+        fillAllSlots();
+        int[] set = {0, 1, 2};
+        for (int slot : set)
+            table.placeToken(0, slot);
+        table.placeToken(1, 1);
+        table.placeToken(1, 5);
+        table.placeToken(2, 2);
+
+        assertTrue(table.claimSet(0, set, table.tokenVersions(0, set)));
+
+        assertEquals(0, table.getTokenSize(0));
+        assertArrayEquals(new int[]{5}, table.tokenSlots(1));
+        assertEquals(0, table.getTokenSize(2));
+        for (int slot : set) {
+            assertEquals(null, slotToCard[slot]);
+            assertEquals(0, table.slotPlayers.get(slot));
+        }
+        for (int player = 0; player < 3; ++player)
+            assertBitmaskMatchesTokens(player);
+    }
+
+    @Test
+    void toggleToken_RacingClaimLeavesNoStaleToken() throws InterruptedException {
+
+        fillAllSlots();
+        Thread toggler = new Thread(() -> {
+            for (int i = 0; i < 50_000; ++i)
+                table.toggleToken(1, 0);
+        });
+        toggler.start();
+        for (int i = 0; toggler.isAlive(); ++i) {
+            if (slotToCard[0] == null)
+                table.placeCard(i % 2 == 0 ? 0 : 40, 0);
+            table.claimSet(0, new int[]{0}, new int[]{table.slotVersions.get(0)});
+        }
+        toggler.join();
+
+        // a token that survived the claims was placed on the current card
+        if (table.isToken(1, 0))
+            assertEquals(table.slotVersions.get(0), table.tokenVersions(1, new int[]{0})[0]);
+        assertBitmaskMatchesTokens(1);
     }
 
     static class MockUserInterface implements UserInterface {
@@ -171,6 +267,11 @@ class TableTest {
             return new int[0][];
         }
 
+        @Override
+        public SetRule setRule() {
+            return null;
+        }
+
         @Override
         public boolean testSet(int[] cards) {
             return false;
@@ -180,9 +281,6 @@ class TableTest {
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
-
-        @Override
-        public void spin() {}
     }
 
     static class MockLogger extends Logger {